@@ -0,0 +1,126 @@
+package syspro.tm;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+import syspro.tm.lexer.BuiltInType;
+import syspro.tm.lexer.IdentifierToken;
+import syspro.tm.lexer.IndentationToken;
+import syspro.tm.lexer.IntegerLiteralToken;
+import syspro.tm.lexer.Keyword;
+import syspro.tm.lexer.KeywordToken;
+import syspro.tm.lexer.StringLiteralToken;
+import syspro.tm.lexer.Symbol;
+import syspro.tm.lexer.SymbolToken;
+import syspro.tm.lexer.Token;
+import syspro.tm.parser.AnySyntaxKind;
+import syspro.tm.parser.SyntaxKind;
+import syspro.tm.parser.SyntaxNode;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Serialization cost per {@link Token} and per {@link SyntaxNode}, in ns, the same way as for {@code registerObjectImpl}.
+ * Needs the native library, the same as running tests. Run on the baseline too, to compare.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ObjectDescriptorBenchmark {
+    private static final int OBJECT_COUNT = 4096;
+    private static final int NODES_PER_LIST = 8;
+
+    private final TokenObjectDescriptor tokenDescriptor = new TokenObjectDescriptor();
+    private final SyntaxNodeObjectDescriptor nodeDescriptor = new SyntaxNodeObjectDescriptor();
+    private List<Token> tokens;
+    private List<SyntaxNode> nodes;
+
+    @Setup
+    public void setUp() {
+        // Tokens of `class C` followed by lines like `    val name0 = 0 + "0"`.
+        tokens = new ArrayList<>();
+        tokens.add(new KeywordToken(0, 5, 0, 1, Keyword.CLASS));
+        tokens.add(new IdentifierToken(6, 7, 0, 1, "C", null));
+        var position = 8;
+        for (var line = 0; tokens.size() < OBJECT_COUNT; line++) {
+            final var name = "name" + line;
+            final var value = String.valueOf(line);
+            if (line == 0) {
+                tokens.add(new IndentationToken(position, position - 1, 0, 0, 1));
+            }
+            tokens.add(new KeywordToken(position, position + 7, 4, 1, Keyword.VAL));
+            position += 8;
+            tokens.add(new IdentifierToken(position, position + name.length(), 0, 1, name, null));
+            position += name.length() + 1;
+            tokens.add(new SymbolToken(position, position + 1, 0, 1, Symbol.EQUALS));
+            position += 2;
+            tokens.add(new IntegerLiteralToken(position, position + value.length(), 0, 1, BuiltInType.INT64, false, line));
+            position += value.length() + 1;
+            tokens.add(new SymbolToken(position, position + 1, 0, 1, Symbol.PLUS));
+            position += 2;
+            tokens.add(new StringLiteralToken(position, position + value.length() + 2, 0, 1, value));
+            position += value.length() + 3;
+        }
+        tokens = new ArrayList<>(tokens.subList(0, OBJECT_COUNT));
+
+        // Terminals grouped into lists, preorder: a mix of inner nodes and terminals, like a real tree.
+        nodes = new ArrayList<>();
+        for (var i = 0; i < OBJECT_COUNT; i += NODES_PER_LIST) {
+            final var terminals = new SyntaxNode[Math.min(NODES_PER_LIST, OBJECT_COUNT - i)];
+            for (var j = 0; j < terminals.length; j++) {
+                final var token = tokens.get(i + j);
+                terminals[j] = new Node(token.toSyntaxKind(), token);
+            }
+            nodes.add(new Node(SyntaxKind.LIST, null, terminals));
+            nodes.addAll(List.of(terminals));
+        }
+        nodes = nodes.subList(0, OBJECT_COUNT);
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(OBJECT_COUNT)
+    public void tokens(Blackhole blackhole) {
+        serialize(tokens, tokenDescriptor, blackhole);
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(OBJECT_COUNT)
+    public void syntaxNodes(Blackhole blackhole) {
+        serialize(nodes, nodeDescriptor, blackhole);
+    }
+
+    private static <T> void serialize(List<T> objects, ObjectDescriptor<T> descriptor, Blackhole blackhole) {
+        new LibraryCall() {
+            @Override
+            public void call() {
+                blackhole.consume(serializeFlatObjects(objects, descriptor));
+            }
+        }.makeCall();
+    }
+
+    private record Node(AnySyntaxKind kind, Token token, SyntaxNode... slots) implements SyntaxNode {
+        @Override
+        public int slotCount() {
+            return slots.length;
+        }
+
+        @Override
+        public SyntaxNode slot(int index) {
+            return slots[index];
+        }
+    }
+}
@@ -0,0 +1,87 @@
+package syspro.tm;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Contention on {@link ObjectHandleTable} from concurrent upcalls, as with {@code TestMode.parallel(true)}.
+ * Runs on all cores by default, compare with {@code -t 1} to see how throughput scales with the number of threads.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@Threads(Threads.MAX)
+public class ObjectHandleTableBenchmark {
+    private static final int OBJECTS_PER_CALL = 64;
+    private static final int SHARED_OBJECT_COUNT = 1 << 16;
+
+    private final ObjectHandleTable table = new ObjectHandleTable();
+    private final Object[] sharedObjects = new Object[SHARED_OBJECT_COUNT];
+    private final long[] sharedHandles = new long[SHARED_OBJECT_COUNT];
+
+    @State(Scope.Thread)
+    public static class Cursor {
+        private int next;
+
+        int next() {
+            // Threads start at different places, so that they don't walk the same stripes in lockstep.
+            next = next == 0 ? System.identityHashCode(this) : next + 1;
+            return next & SHARED_OBJECT_COUNT - 1;
+        }
+    }
+
+    @Setup
+    public void setUp() {
+        for (var i = 0; i < SHARED_OBJECT_COUNT; i++) {
+            sharedObjects[i] = new Object();
+            sharedHandles[i] = table.toHandle(sharedObjects[i], ObjectHandleTable.PINNED);
+        }
+    }
+
+    /**
+     * One request: register fresh objects in a scope, hand it over to native code, which releases it right away.
+     */
+    @Benchmark
+    @OperationsPerInvocation(OBJECTS_PER_CALL)
+    public long scopedCall() {
+        final var scope = table.openScope();
+        var root = ObjectHandleTable.NULL_HANDLE;
+        for (var i = 0; i < OBJECTS_PER_CALL; i++) {
+            root = table.toHandle(new Object(), scope);
+        }
+        table.publish(scope, root);
+        table.release(root);
+        return root;
+    }
+
+    /**
+     * Identity lookup of an object that already has a handle.
+     */
+    @Benchmark
+    public long toHandle(Cursor cursor) {
+        return table.toHandle(sharedObjects[cursor.next()], ObjectHandleTable.PINNED);
+    }
+
+    /**
+     * Lock-free lookup by handle.
+     */
+    @Benchmark
+    public Object get(Cursor cursor) {
+        return table.get(sharedHandles[cursor.next()]);
+    }
+}
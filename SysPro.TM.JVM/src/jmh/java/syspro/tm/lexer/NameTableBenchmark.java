@@ -0,0 +1,92 @@
+package syspro.tm.lexer;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Objects;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cost of interning identifier and string literal values while lexing, in MB/s.
+ * Run with {@code -prof gc} to compare the allocation rate too.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class NameTableBenchmark {
+    @Param({"1048576"})
+    public int size;
+
+    private final ReferenceLexer lexer = new ReferenceLexer();
+    private final NameTable sharedNames = new NameTable();
+    private String code;
+    private String[] values;
+
+    /**
+     * {@code none}: values are not interned. {@code shared}: one table for the whole compilation, where most values are
+     * already known. {@code perFile}: a new table for every file, where every first occurrence is added.
+     */
+    @State(Scope.Benchmark)
+    public static class Names {
+        @Param({"none", "shared", "perFile"})
+        public String names;
+    }
+
+    @State(Scope.Thread)
+    public static class Cursor {
+        private int next;
+    }
+
+    @Setup
+    public void setUp() {
+        code = SampleSources.generate(size, TestLineTerminators.LineFeed);
+        final var tokens = lexer.lex(code);
+        values = tokens.stream()
+                .map(token -> switch (token) {
+                    case IdentifierToken identifierToken -> identifierToken.value;
+                    case StringLiteralToken literalToken -> literalToken.value;
+                    default -> null;
+                })
+                .filter(Objects::nonNull)
+                .toArray(String[]::new);
+        for (final var value : values) {
+            sharedNames.intern(value);
+        }
+    }
+
+    @Benchmark
+    public TokenBuffer lex(Names names, LexedBytes counter) {
+        counter.bytes += code.length();
+        return switch (names.names) {
+            case "shared" -> lexer.withNames(sharedNames).lex(code);
+            case "perFile" -> lexer.withNames(new NameTable()).lex(code);
+            default -> lexer.lex(code);
+        };
+    }
+
+    /**
+     * Lookup of known values from all cores at once, e.g. by {@link ReferenceLexer#lexParallel(CharSequence)} or binders.
+     */
+    @Benchmark
+    @Threads(Threads.MAX)
+    @OutputTimeUnit(TimeUnit.NANOSECONDS)
+    @BenchmarkMode(Mode.AverageTime)
+    public String intern(Cursor cursor) {
+        final var value = values[cursor.next];
+        cursor.next = cursor.next + 1 == values.length ? 0 : cursor.next + 1;
+        return sharedNames.intern(value, 0, value.length());
+    }
+}
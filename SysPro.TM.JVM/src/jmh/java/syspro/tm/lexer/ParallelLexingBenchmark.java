@@ -0,0 +1,58 @@
+package syspro.tm.lexer;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * {@link ReferenceLexer#lexParallel(CharSequence, ForkJoinPool)} throughput by pool size, in MB/s.
+ * {@code parallelism} of 0 is the sequential {@link ReferenceLexer#lex(CharSequence)}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(value = 1, jvmArgsAppend = "-Xmx4g")
+public class ParallelLexingBenchmark {
+    @Param({"0", "1", "2", "4", "8", "16", "32"})
+    public int parallelism;
+
+    @Param({"16777216"})
+    public int size;
+
+    private final ReferenceLexer lexer = new ReferenceLexer();
+    private ForkJoinPool pool;
+    private String code;
+
+    @Setup
+    public void setUp() {
+        code = SampleSources.generate(size, TestLineTerminators.LineFeed);
+        pool = parallelism == 0 ? null : new ForkJoinPool(parallelism);
+    }
+
+    @TearDown
+    public void tearDown() {
+        if (pool != null) {
+            pool.shutdown();
+        }
+    }
+
+    @Benchmark
+    public TokenBuffer lex(LexedBytes counter) {
+        counter.bytes += code.length();
+        return pool == null ? lexer.lex(code) : lexer.lexParallel(code, pool);
+    }
+}
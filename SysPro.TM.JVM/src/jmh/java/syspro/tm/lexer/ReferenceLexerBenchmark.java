@@ -0,0 +1,46 @@
+package syspro.tm.lexer;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * {@link ReferenceLexer} throughput on {@link String} input, in MB/s.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ReferenceLexerBenchmark {
+    @Param({"LineFeed", "CarriageReturnLineFeed"})
+    public TestLineTerminators lineTerminators;
+
+    @Param({"65536", "1048576"})
+    public int size;
+
+    private final ReferenceLexer lexer = new ReferenceLexer();
+    private String code;
+
+    @Setup
+    public void setUp() {
+        code = SampleSources.generate(size, lineTerminators);
+    }
+
+    @Benchmark
+    public TokenBuffer lex(LexedBytes counter) {
+        counter.bytes += code.length();
+        return lexer.lex(code);
+    }
+}
@@ -0,0 +1,62 @@
+package syspro.tm.lexer;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import syspro.tm.parser.TextSpan;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Editor-style edit in the middle of a large file: {@link Lexer#relex(String, List, TextChange)} against lexing it again.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class RelexBenchmark {
+    /**
+     * Typing into an identifier, opening a string literal (damages the rest of the line),
+     * and indenting a line (changes the indentation of the following lines).
+     */
+    @Param({"x", "\"", "    "})
+    public String edit;
+
+    @Param({"4194304"})
+    public int size;
+
+    private final ReferenceLexer lexer = new ReferenceLexer();
+    private TokenBuffer previousTokens;
+    private TextChange change;
+    private String newCode;
+
+    @Setup
+    public void setUp() {
+        final var code = SampleSources.generate(size, TestLineTerminators.LineFeed);
+        previousTokens = lexer.lex(code);
+        final var lineStart = code.indexOf('\n', code.length() / 2) + 1;
+        change = new TextChange(new TextSpan(code.indexOf("var", lineStart), 0), edit);
+        newCode = change.applyTo(code);
+    }
+
+    @Benchmark
+    public List<Token> relex() {
+        return lexer.relex(newCode, previousTokens, change);
+    }
+
+    @Benchmark
+    public TokenBuffer lex() {
+        return lexer.lex(newCode);
+    }
+}
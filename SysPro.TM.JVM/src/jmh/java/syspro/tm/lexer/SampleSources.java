@@ -0,0 +1,50 @@
+package syspro.tm.lexer;
+
+/**
+ * Synthetic ASCII SysPro sources for benchmarks: classes with fields and methods, indentation, comments and literals,
+ * in the proportions of hand-written code.
+ */
+final class SampleSources {
+    private SampleSources() {
+    }
+
+    /**
+     * @return code of at least {@code size} chars, ending with a line terminator
+     */
+    static String generate(int size, TestLineTerminators lineTerminators) {
+        final var code = new StringBuilder(size + 1024);
+        var line = 0;
+        for (var index = 0; code.length() < size; index++) {
+            final var lines = new String[]{
+                    "# Node " + index + " of the generated benchmark source, comments are a large part of real code.",
+                    "class Node" + index + "<T> <: Comparable<Node" + index + "<T>>",
+                    "    var value: T",
+                    "    val name: String = \"node " + index + "\\twith \\\"escapes\\\" and a long enough body\"",
+                    "    var count: Int64 = " + index + "i64",
+                    "",
+                    "    def compare(other: Node" + index + "<T>): Int32",
+                    "        # Compare by count first, then by name.",
+                    "        if count >= other.count && name != null",
+                    "            return 1",
+                    "        var i = 0u32",
+                    "        while i < " + index % 17 + "u32",
+                    "            i = i + 1u32",
+                    "        return this.name.compare(other.name, '\\U+0041')",
+                    "",
+            };
+            for (final var text : lines) {
+                code.append(text).append(lineTerminator(lineTerminators, line++));
+            }
+        }
+        return code.toString();
+    }
+
+    private static String lineTerminator(TestLineTerminators lineTerminators, int line) {
+        return switch (lineTerminators) {
+            case Native -> System.lineSeparator();
+            case CarriageReturnLineFeed -> "\r\n";
+            case LineFeed -> "\n";
+            case Mixed -> line % 2 == 0 ? "\n" : "\r\n";
+        };
+    }
+}
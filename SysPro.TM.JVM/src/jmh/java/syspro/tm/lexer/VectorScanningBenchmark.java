@@ -0,0 +1,69 @@
+package syspro.tm.lexer;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.lang.foreign.Arena;
+import java.lang.foreign.ValueLayout;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * {@link ReferenceLexer#vectorized()} against the scalar lexer on the same ASCII {@link Utf8SourceText}, in MB/s.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = {"--add-modules", "jdk.incubator.vector"})
+public class VectorScanningBenchmark {
+    @Param({"LineFeed", "CarriageReturnLineFeed", "Mixed"})
+    public TestLineTerminators lineTerminators;
+
+    @Param({"1048576"})
+    public int size;
+
+    private final ReferenceLexer scalar = new ReferenceLexer();
+    private final ReferenceLexer vectorized = ReferenceLexer.vectorized();
+    private Arena arena;
+    private Utf8SourceText text;
+
+    @Setup
+    public void setUp() {
+        if (!vectorized.isVectorized()) {
+            throw new IllegalStateException("jdk.incubator.vector is not available");
+        }
+
+        final var code = SampleSources.generate(size, lineTerminators).getBytes(StandardCharsets.US_ASCII);
+        arena = Arena.ofShared();
+        text = Utf8SourceText.of(arena.allocateFrom(ValueLayout.JAVA_BYTE, code));
+    }
+
+    @TearDown
+    public void tearDown() {
+        arena.close();
+    }
+
+    @Benchmark
+    public TokenBuffer scalar(LexedBytes counter) {
+        counter.bytes += text.bytes().byteSize();
+        return scalar.lex(text);
+    }
+
+    @Benchmark
+    public TokenBuffer vectorized(LexedBytes counter) {
+        counter.bytes += text.bytes().byteSize();
+        return vectorized.lex(text);
+    }
+}
@@ -1,14 +1,9 @@
 package syspro.tm;
 
-import syspro.tm.lexer.Keyword;
 import syspro.tm.lexer.Lexer;
-import syspro.tm.lexer.Symbol;
 import syspro.tm.lexer.TestMode;
-import syspro.tm.parser.AnySyntaxKind;
 import syspro.tm.parser.Parser;
-import syspro.tm.parser.SyntaxKind;
 import syspro.tm.symbols.LanguageServer;
-import syspro.tm.symbols.SymbolKind;
 
 import java.io.IOException;
 import java.lang.foreign.*;
@@ -18,8 +13,11 @@ import java.lang.invoke.MethodType;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.time.Duration;
 import java.util.*;
 
+import static syspro.tm.NativeAbi.*;
+
 final class Library {
 
     static final Linker linker = Linker.nativeLinker();
@@ -27,34 +25,18 @@ final class Library {
     private static final SymbolLookup lookup;
     private static final String NATIVE_LIBRARY_TEMP_DIRECTORY_PREFIX = "SysPro.TM.JVM";
     private static final String LOCK_FILE_PREFIX = "lock-";
-    private static final IdentityHashMap<Object, Long> objectHandles = new IdentityHashMap<>();
-    private static final ArrayList<Object> objectReferences = new ArrayList<>();
-    static final ValueLayout.OfLong JVM_HANDLE_LAYOUT = ValueLayout.JAVA_LONG;
+    /**
+     * Set {@code syspro.tm.staleObjectScopeSeconds} to pin the objects of requests that native code doesn't release in time,
+     * instead of waiting for it indefinitely.
+     */
+    private static final ObjectHandleTable objectHandles = new ObjectHandleTable(Duration.ofSeconds(Long.getLong("syspro.tm.staleObjectScopeSeconds", 0)));
+    static final NativeStringPool nativeStrings = new NativeStringPool(1 << 16);
     private static final ValueLayout.OfLong LIB_HANDLE_LAYOUT = ValueLayout.JAVA_LONG;
-    static final AddressLayout VMT_STUB_LAYOUT = ValueLayout.ADDRESS;
-    static final AddressLayout ARRAY_LAYOUT = ValueLayout.ADDRESS;
-    static final AddressLayout STRING_LAYOUT = ValueLayout.ADDRESS;
-    static final Class<Long> JVM_HANDLE_CLASS = long.class;
     private static final Class<Long> LIB_HANDLE_CLASS = long.class;
-    static final Class<MemorySegment> ARRAY_CLASS = MemorySegment.class;
-    static final Class<MemorySegment> STRING_CLASS = MemorySegment.class;
-    static final List<ObjectDescriptor<?>> layouts = List.of(
-            new TokenObjectDescriptor(),
-            new IterableObjectDescriptor(),
-            new LexerObjectDescriptor(),
-            new ParserObjectDescriptor(),
-            new ParseResultObjectDescriptor(),
-            new SyntaxNodeObjectDescriptor(),
-            new TextSpanObjectDescriptor(),
-            new DiagnosticObjectDescriptor(),
-            new ErrorCodeObjectDescriptor(),
-            new DiagnosticArgumentObjectDescriptor(),
-            new LanguageServerObjectDescriptor(),
-            new SemanticModelObjectDescriptor(),
-            new SemanticSymbolObjectDescriptor()
-    );
     private static volatile boolean hasFatalFailures;
     private static volatile boolean isFatalFailureExit;
+    private static volatile boolean canReleaseObjects;
+    private static volatile int objectKindCount = BASE_OBJECT_KIND_COUNT;
     private static volatile Path nativeLibraryLockFile;
     private static volatile MethodHandle registerObjectResult;
     private static volatile MethodHandle registerTask1Solution;
@@ -79,26 +61,67 @@ final class Library {
                 FunctionDescriptor.ofVoid(ValueLayout.ADDRESS)
         );
 
-        try (Arena arena = Arena.ofConfined()) {
-            new LibraryCall(arena) {
+        new LibraryCall() {
+
+            @Override
+            public void call() throws Throwable {
+                registerRegistrarHandle.invokeExact(
+                        linker.upcallStub(
+                                MethodHandles.lookup().findStatic(
+                                        Library.class, "registerObjectImpl",
+                                        MethodType.methodType(void.class, LIB_HANDLE_CLASS, int.class, int.class, ARRAY_CLASS)
+                                ),
+                                FunctionDescriptor.ofVoid(
+                                        LIB_HANDLE_LAYOUT, ValueLayout.JAVA_INT, ValueLayout.JAVA_INT, ARRAY_LAYOUT
+                                ),
+                                Library.callStubArena
+                        )
+                );
+            }
+        }.makeCall();
+
+        // Older SysPro.TM.Library builds never release objects, see Library.openObjectScope() for them.
+        lookup.find("RegisterObjectReleaser").ifPresent(registerObjectReleaser -> {
+            final var registerObjectReleaserHandle = linker.downcallHandle(
+                    registerObjectReleaser,
+                    FunctionDescriptor.ofVoid(ValueLayout.ADDRESS)
+            );
+
+            new LibraryCall() {
 
                 @Override
                 public void call() throws Throwable {
-                    registerRegistrarHandle.invokeExact(
+                    registerObjectReleaserHandle.invokeExact(
                             linker.upcallStub(
                                     MethodHandles.lookup().findStatic(
-                                            Library.class, "registerObjectImpl",
-                                            MethodType.methodType(void.class, LIB_HANDLE_CLASS, int.class, int.class, ARRAY_CLASS)
-                                    ),
-                                    FunctionDescriptor.ofVoid(
-                                            LIB_HANDLE_LAYOUT, ValueLayout.JAVA_INT, ValueLayout.JAVA_INT, ARRAY_LAYOUT
+                                            Library.class, "releaseObjectImpl",
+                                            MethodType.methodType(void.class, JVM_HANDLE_CLASS)
                                     ),
+                                    FunctionDescriptor.ofVoid(JVM_HANDLE_LAYOUT),
                                     Library.callStubArena
                             )
                     );
+                    canReleaseObjects = true;
                 }
             }.makeCall();
-        }
+        });
+
+        // Kinds appended to NativeAbi.layouts later are only requested by SysPro.TM.Library builds that know about them.
+        lookup.find("NegotiateObjectKinds").ifPresent(negotiateObjectKinds -> {
+            final var negotiateObjectKindsHandle = linker.downcallHandle(
+                    negotiateObjectKinds,
+                    FunctionDescriptor.of(ValueLayout.JAVA_INT, ValueLayout.JAVA_INT)
+            );
+
+            new LibraryCall() {
+
+                @Override
+                public void call() throws Throwable {
+                    final var count = (int) negotiateObjectKindsHandle.invokeExact(layouts.size());
+                    objectKindCount = Math.clamp(count, BASE_OBJECT_KIND_COUNT, layouts.size());
+                }
+            }.makeCall();
+        });
     }
 
     private Library() {
@@ -225,44 +248,82 @@ final class Library {
     }
 
     static long toObjectHandle(Object object) {
-        synchronized (objectHandles) {
-            final var handle = objectHandles.get(object);
-            if (handle == null) {
-                final long newHandle = objectReferences.size();
-                objectReferences.add(object);
-                objectHandles.put(object, newHandle);
-                return newHandle;
-            }
+        return objectHandles.toHandle(object, ObjectHandleTable.PINNED);
+    }
+
+    static long toObjectHandle(Object object, ObjectHandleTable.Scope scope) {
+        return objectHandles.toHandle(object, scope);
+    }
 
-            return handle;
+    static <T> T fromObjectHandle(long handle) {
+        return objectHandles.get(handle);
+    }
+
+    /**
+     * Open a scope for the handles created while serving a single request from native code.
+     * <p>
+     * Native code that can't release objects might still use them at any point, so their handles are pinned.
+     */
+    static ObjectHandleTable.Scope openObjectScope() {
+        return canReleaseObjects ? objectHandles.openScope() : ObjectHandleTable.PINNED;
+    }
+
+    /**
+     * Register the request result and hand the scope over to native code, which releases it via {@link Library#releaseObjectImpl(long)}.
+     */
+    static long publishObject(ObjectHandleTable.Scope scope, Object object) {
+        final var handle = objectHandles.toHandle(object, scope);
+        objectHandles.publish(scope, handle);
+        return handle;
+    }
+
+    static ObjectHandleTable.Scope objectScope(long handle) {
+        final var scope = objectHandles.scopeOf(handle);
+        return scope == null ? ObjectHandleTable.PINNED : scope;
+    }
+
+    private static ObjectHandleTable.Scope objectScope(int count, MemorySegment handleArraySegment) {
+        ObjectHandleTable.Scope scope = null;
+        for (int i = 0; i < count; i++) {
+            scope = objectHandles.join(scope, objectHandles.scopeOf(handleArraySegment.getAtIndex(JVM_HANDLE_LAYOUT, i)));
         }
+
+        return scope == null ? ObjectHandleTable.PINNED : scope;
     }
 
-    @SuppressWarnings("unchecked")
-    private static <T> T fromObjectHandle(int handle) {
-        synchronized (objectHandles) {
-            return (T) objectReferences.get(handle);
+    private static void releaseObjectImpl(long handle) {
+        try {
+            objectHandles.release(handle);
+        } catch (Throwable e) {
+            fatalError(e);
         }
     }
 
-    static <T> T fromObjectHandle(long handle) {
-        return fromObjectHandle(Math.toIntExact(handle));
+    /**
+     * Number of object kinds native code may request: every SysPro.TM.Library build knows the first
+     * {@link NativeAbi#BASE_OBJECT_KIND_COUNT}, newer ones negotiate the rest via {@code NegotiateObjectKinds}.
+     */
+    static int objectKindCount() {
+        return objectKindCount;
     }
 
     @SuppressWarnings("unchecked")
     private static void registerObjectImpl(long request, int kind, int count, MemorySegment handleArraySegment) {
         final var list = Arrays.asList(readHandleArray(count, handleArraySegment));
+        final var scope = objectScope(count, handleArraySegment.reinterpret(count * JVM_HANDLE_LAYOUT.byteSize()));
 
-        final var desc = (ObjectDescriptor<Object>) layouts.get(kind);
-        try (final var arena = Arena.ofConfined()) {
-            new LibraryCall(arena) {
+        new LibraryCall(scope) {
 
-                @Override
-                public void call() throws Throwable {
-                    registerObjectResult().invokeExact(request, serializeFlatObjects(list, desc));
+            @Override
+            public void call() throws Throwable {
+                if (kind < 0 || kind >= objectKindCount) {
+                    throw new IllegalStateException("Object kind " + kind + " was not negotiated with SysPro.TM.Library");
                 }
-            }.makeCall();
-        }
+
+                final var desc = (ObjectDescriptor<Object>) layouts.get(kind);
+                registerObjectResult().invokeExact(request, serializeFlatObjects(list, desc));
+            }
+        }.makeCall();
     }
 
     static <T> T[] readHandleArray(int count, MemorySegment handleArraySegment) {
@@ -277,8 +338,8 @@ final class Library {
     }
 
     static void registerTask1Solution(Lexer impl, TestMode mode) {
-        try (final var arena = Arena.ofConfined()) {
-            new LibraryCall(arena) {
+        try {
+            new LibraryCall() {
 
                 @Override
                 public void call() throws Throwable {
@@ -295,8 +356,8 @@ final class Library {
     }
 
     static void registerTask2Solution(Parser impl) {
-        try (final var arena = Arena.ofConfined()) {
-            new LibraryCall(arena) {
+        try {
+            new LibraryCall() {
 
                 @Override
                 public void call() throws Throwable {
@@ -309,8 +370,8 @@ final class Library {
     }
 
     static void registerTask3Solution(LanguageServer impl) {
-        try (final var arena = Arena.ofConfined()) {
-            new LibraryCall(arena) {
+        try {
+            new LibraryCall() {
 
                 @Override
                 public void call() throws Throwable {
@@ -323,8 +384,8 @@ final class Library {
     }
 
     static void startWebServer(int port) {
-        try (final var arena = Arena.ofConfined()) {
-            new LibraryCall(arena) {
+        try {
+            new LibraryCall() {
 
                 @Override
                 public void call() throws Throwable {
@@ -337,8 +398,8 @@ final class Library {
     }
 
     static void stopWebServer() {
-        try (final var arena = Arena.ofConfined()) {
-            new LibraryCall(arena) {
+        try {
+            new LibraryCall() {
 
                 @Override
                 public void call() throws Throwable {
@@ -351,8 +412,8 @@ final class Library {
     }
 
     static void waitForWebServerExit() {
-        try (final var arena = Arena.ofConfined()) {
-            new LibraryCall(arena) {
+        try {
+            new LibraryCall() {
 
                 @Override
                 public void call() throws Throwable {
@@ -365,8 +426,8 @@ final class Library {
     }
 
     static void waitForWebServerExitWithTimeout(long timeoutMillis) {
-        try (final var arena = Arena.ofConfined()) {
-            new LibraryCall(arena) {
+        try {
+            new LibraryCall() {
 
                 @Override
                 public void call() throws Throwable {
@@ -379,8 +440,8 @@ final class Library {
     }
 
     static void addTestFilter(String filter, int flags) {
-        try (final var arena = Arena.ofConfined()) {
-            new LibraryCall(arena) {
+        try {
+            new LibraryCall() {
 
                 @Override
                 public void call() throws Throwable {
@@ -393,8 +454,8 @@ final class Library {
     }
 
     static void clearTestFilters() {
-        try (final var arena = Arena.ofConfined()) {
-            new LibraryCall(arena) {
+        try {
+            new LibraryCall() {
 
                 @Override
                 public void call() throws Throwable {
@@ -429,35 +490,6 @@ final class Library {
         hasFatalFailures = true;
     }
 
-    static int tokenKind(Keyword keyword) {
-        return 100 + keyword.ordinal();
-    }
-
-    static int tokenKind(Symbol symbol) {
-        return 200 + symbol.ordinal();
-    }
-
-    private static int syntaxKind(SyntaxKind kind) {
-        final var ordinal = kind.ordinal();
-        if (ordinal < SyntaxKind.SOURCE_TEXT.ordinal()) {
-            return ordinal;
-        }
-        return 2000 + ordinal - SyntaxKind.SOURCE_TEXT.ordinal();
-    }
-
-    static int syntaxKind(AnySyntaxKind kind) {
-        return switch (kind) {
-            case Keyword keyword -> tokenKind(keyword);
-            case Symbol symbol -> tokenKind(symbol);
-            case SyntaxKind nonTerminalKind -> syntaxKind(nonTerminalKind);
-            default -> throw new IllegalStateException("Unexpected value: " + kind + ". You can only return Keyword, Symbol or SyntaxKind from SyntaxNode.kind().");
-        };
-    }
-
-    static int symbolKind(SymbolKind kind) {
-        return kind.ordinal();
-    }
-
     private static Path extractNativeLibrary() {
         final var property = System.getProperty("syspro.tm.library");
         if (property != null) {
@@ -1,48 +1,78 @@
 package syspro.tm;
 
-import java.lang.foreign.Arena;
 import java.lang.foreign.MemorySegment;
 import java.lang.foreign.ValueLayout;
-import java.util.IdentityHashMap;
+import java.lang.ref.Reference;
+import java.util.HashMap;
 import java.util.List;
 
 abstract class LibraryCall {
-    final Arena arena;
-    private final IdentityHashMap<String, MemorySegment> strings = new IdentityHashMap<>();
+    final SlabAllocator allocator = SlabAllocator.current();
+    final ObjectHandleTable.Scope scope;
+    private final HashMap<String, MemorySegment> strings = new HashMap<>();
+    private SyntaxNodeMetrics nodeMetrics;
 
-    public LibraryCall(Arena arena) {
-        assert arena != null;
-        this.arena = arena;
+    public LibraryCall() {
+        this(ObjectHandleTable.PINNED);
+    }
+
+    public LibraryCall(ObjectHandleTable.Scope scope) {
+        assert scope != null;
+        this.scope = scope;
     }
 
     protected MemorySegment serializeString(String string) {
-        final var interned = string.intern();
-        var segment = strings.get(interned);
+        // Also keeps pooled segments reachable (and thus alive) until the call completes, even if the pool evicts them,
+        // see the reachability fence in makeCall.
+        var segment = strings.get(string);
         if (segment == null) {
-            segment = arena.allocateFrom(string);
-            strings.put(interned, segment);
+            segment = string.length() <= NativeStringPool.MAX_POOLED_LENGTH
+                    ? Library.nativeStrings.get(string)
+                    : allocator.allocateFrom(string);
+            strings.put(string, segment);
         }
         return segment;
     }
 
+    /**
+     * Handle of an object referenced by the serialized objects, valid as long as the call's scope.
+     */
+    protected long toObjectHandle(Object object) {
+        return Library.toObjectHandle(object, scope);
+    }
+
+    SyntaxNodeMetrics nodeMetrics() {
+        if (nodeMetrics == null) {
+            // Native code fetches a tree one level per call, the metrics have to outlive the call to be computed once.
+            nodeMetrics = scope.nodeMetrics();
+        }
+        return nodeMetrics;
+    }
+
     protected <T> MemorySegment serializeFlatObjects(List<? extends T> list, ObjectDescriptor<T> desc) {
         final var size = list.size();
         final var itemLayout = desc.layout;
         final var totalByteCount = itemLayout.scale(ValueLayout.JAVA_LONG.byteSize(), size);
-        final var segment = arena.allocate(totalByteCount);
+        final var segment = allocator.allocate(totalByteCount, Math.max(ValueLayout.JAVA_LONG.byteAlignment(), itemLayout.byteAlignment()));
         segment.set(ValueLayout.JAVA_LONG, 0, size);
+        final var writer = new ObjectWriter(this, segment);
         for (int i = 0; i < size; i++) {
-            final var slice = segment.asSlice(itemLayout.scale(ValueLayout.JAVA_LONG.byteSize(), i), itemLayout);
-            desc.serialize(list.get(i), slice, this);
+            writer.moveTo(itemLayout.scale(ValueLayout.JAVA_LONG.byteSize(), i));
+            desc.serialize(list.get(i), writer);
         }
         return segment;
     }
 
     public final void makeCall() {
+        final var mark = allocator.mark();
         try {
             call();
         } catch (Throwable e) {
             Library.fatalError(e);
+        } finally {
+            allocator.reset(mark);
+            // Native code might still read pooled strings until call() returns, even if this object is otherwise unused by then.
+            Reference.reachabilityFence(this);
         }
     }
 
@@ -0,0 +1,103 @@
+package syspro.tm;
+
+import syspro.tm.lexer.Keyword;
+import syspro.tm.lexer.Symbol;
+import syspro.tm.parser.AnySyntaxKind;
+import syspro.tm.parser.SyntaxKind;
+import syspro.tm.symbols.SymbolKind;
+
+import java.lang.foreign.AddressLayout;
+import java.lang.foreign.MemorySegment;
+import java.lang.foreign.ValueLayout;
+import java.util.List;
+
+/**
+ * Layouts and kind numbering shared with SysPro.TM.Library.
+ * Unlike {@link Library}, doesn't load the native library, so descriptors can be used on their own.
+ */
+final class NativeAbi {
+    static final ValueLayout.OfLong JVM_HANDLE_LAYOUT = ValueLayout.JAVA_LONG;
+    static final AddressLayout VMT_STUB_LAYOUT = ValueLayout.ADDRESS;
+    static final AddressLayout ARRAY_LAYOUT = ValueLayout.ADDRESS;
+    static final AddressLayout STRING_LAYOUT = ValueLayout.ADDRESS;
+    static final Class<Long> JVM_HANDLE_CLASS = long.class;
+    static final Class<MemorySegment> ARRAY_CLASS = MemorySegment.class;
+    static final Class<MemorySegment> STRING_CLASS = MemorySegment.class;
+    /**
+     * Object kinds are indices in this list. New kinds are appended, so that existing indices stay stable.
+     */
+    static final List<ObjectDescriptor<?>> layouts = List.of(
+            new TokenObjectDescriptor(),
+            new IterableObjectDescriptor(),
+            new LexerObjectDescriptor(),
+            new ParserObjectDescriptor(),
+            new ParseResultObjectDescriptor(),
+            new SyntaxNodeObjectDescriptor(),
+            new TextSpanObjectDescriptor(),
+            new DiagnosticObjectDescriptor(),
+            new ErrorCodeObjectDescriptor(),
+            new DiagnosticArgumentObjectDescriptor(),
+            new LanguageServerObjectDescriptor(),
+            new SemanticModelObjectDescriptor(),
+            new SemanticSymbolObjectDescriptor(),
+            new SyntaxTreeObjectDescriptor(),
+            new TokenListObjectDescriptor()
+    );
+    /**
+     * Kinds known to every SysPro.TM.Library build. Native code may only request the rest after
+     * negotiating them, see {@link Library#objectKindCount()}.
+     */
+    static final int BASE_OBJECT_KIND_COUNT = 13;
+    static final int SYNTAX_TREE_KIND = 13;
+    static final int TOKEN_LIST_KIND = 14;
+    private static final ClassValue<Integer> layoutKinds = new ClassValue<>() {
+        @Override
+        protected Integer computeValue(Class<?> type) {
+            for (var kind = 0; kind < layouts.size(); kind++) {
+                if (layouts.get(kind).supports(type)) {
+                    return kind;
+                }
+            }
+            return -1;
+        }
+    };
+
+    private NativeAbi() {
+    }
+
+    /**
+     * Index in {@link NativeAbi#layouts} of the first descriptor supporting the type, or -1. Computed once per class.
+     */
+    static int layoutKind(Class<?> type) {
+        return layoutKinds.get(type);
+    }
+
+    static int tokenKind(Keyword keyword) {
+        return 100 + keyword.ordinal();
+    }
+
+    static int tokenKind(Symbol symbol) {
+        return 200 + symbol.ordinal();
+    }
+
+    private static int syntaxKind(SyntaxKind kind) {
+        final var ordinal = kind.ordinal();
+        if (ordinal < SyntaxKind.SOURCE_TEXT.ordinal()) {
+            return ordinal;
+        }
+        return 2000 + ordinal - SyntaxKind.SOURCE_TEXT.ordinal();
+    }
+
+    static int syntaxKind(AnySyntaxKind kind) {
+        return switch (kind) {
+            case Keyword keyword -> tokenKind(keyword);
+            case Symbol symbol -> tokenKind(symbol);
+            case SyntaxKind nonTerminalKind -> syntaxKind(nonTerminalKind);
+            default -> throw new IllegalStateException("Unexpected value: " + kind + ". You can only return Keyword, Symbol or SyntaxKind from SyntaxNode.kind().");
+        };
+    }
+
+    static int symbolKind(SymbolKind kind) {
+        return kind.ordinal();
+    }
+}
@@ -0,0 +1,135 @@
+package syspro.tm;
+
+import java.lang.foreign.Arena;
+import java.lang.foreign.MemorySegment;
+import java.lang.foreign.ValueLayout;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Read-only view of the NUL-terminated UTF-8 source code passed from native code.
+ * <p>
+ * Pure ASCII input (the common case for test sources) is read directly from the native buffer, one byte per char.
+ * Anything else is decoded into a {@link String} once, on first access.
+ * Subsequences are {@link String} copies, so they stay valid after the call.
+ * <p>
+ * The buffer is owned by native code and is only valid during the upcall that received it, which {@link NativeSourceText#close() closes}
+ * the view when done. The view is bound to a confined arena: closing it is cheap, unlike a shared one, and the JVM guarantees
+ * that accessing the view after it is closed throws {@link IllegalStateException}. Other threads get {@link WrongThreadException},
+ * so solutions that read the text in parallel have to share {@link NativeSourceText#toString()}, taken on the calling thread.
+ */
+final class NativeSourceText implements CharSequence, AutoCloseable {
+    private static final long LOW_BITS = 0x0101_0101_0101_0101L;
+    private static final long HIGH_BITS = 0x8080_8080_8080_8080L;
+
+    private final Arena arena;
+    private final MemorySegment bytes;
+    private final boolean isAscii;
+    private String decoded;
+
+    private NativeSourceText(MemorySegment nulTerminated, long length, boolean isAscii) {
+        this.arena = Arena.ofConfined();
+        this.bytes = nulTerminated.reinterpret(length, arena, null);
+        this.isAscii = isAscii;
+    }
+
+    static NativeSourceText of(MemorySegment nulTerminated) {
+        final var unbounded = nulTerminated.reinterpret(Integer.MAX_VALUE);
+        var isAscii = true;
+        var length = 0L;
+
+        // Like strlen, read a word at a time once aligned: an aligned word never crosses a page boundary,
+        // so reading past the terminator can't fault.
+        while ((nulTerminated.address() + length & (Long.BYTES - 1)) != 0) {
+            final var b = unbounded.get(ValueLayout.JAVA_BYTE, length);
+            if (b == 0) {
+                return new NativeSourceText(nulTerminated, length, isAscii);
+            }
+            isAscii &= b > 0;
+            length++;
+        }
+
+        while (length + Long.BYTES <= Integer.MAX_VALUE) {
+            final var word = unbounded.get(ValueLayout.JAVA_LONG_UNALIGNED, length);
+            if (((word - LOW_BITS) & ~word & HIGH_BITS) != 0) {
+                break;
+            }
+            isAscii &= (word & HIGH_BITS) == 0;
+            length += Long.BYTES;
+        }
+
+        while (true) {
+            final var b = unbounded.get(ValueLayout.JAVA_BYTE, length);
+            if (b == 0) {
+                break;
+            }
+            isAscii &= b > 0;
+            length++;
+        }
+
+        return new NativeSourceText(nulTerminated, length, isAscii);
+    }
+
+    @Override
+    public int length() {
+        return isAscii ? (int) bytes().byteSize() : toString().length();
+    }
+
+    @Override
+    public char charAt(int index) {
+        if (!isAscii) {
+            return toString().charAt(index);
+        }
+
+        final var bytes = bytes();
+        if (index < 0 || index >= bytes.byteSize()) {
+            throw new IndexOutOfBoundsException(index);
+        }
+
+        return (char) bytes.get(ValueLayout.JAVA_BYTE, index);
+    }
+
+    @Override
+    public String subSequence(int start, int end) {
+        if (!isAscii) {
+            return toString().substring(start, end);
+        }
+
+        final var bytes = bytes();
+        if (start < 0 || start > end || end > bytes.byteSize()) {
+            throw new IndexOutOfBoundsException("[" + start + ", " + end + ")");
+        }
+
+        return new String(bytes.asSlice(start, end - start).toArray(ValueLayout.JAVA_BYTE), StandardCharsets.ISO_8859_1);
+    }
+
+    @Override
+    public String toString() {
+        final var bytes = bytes();
+        final var decoded = this.decoded;
+        if (decoded != null) {
+            return decoded;
+        }
+
+        final var array = bytes.toArray(ValueLayout.JAVA_BYTE);
+        return this.decoded = new String(array, isAscii ? StandardCharsets.ISO_8859_1 : StandardCharsets.UTF_8);
+    }
+
+    /**
+     * The upcall is done, native code is free to release the buffer.
+     */
+    @Override
+    public void close() {
+        arena.close();
+    }
+
+    /**
+     * Unlike reading the segment, {@link MemorySegment#byteSize()} and cached values don't check the arena, so every path starts here.
+     */
+    private MemorySegment bytes() {
+        if (!arena.scope().isAlive()) {
+            throw new IllegalStateException("Source code is only accessible during the call that received it");
+        }
+
+        return bytes;
+    }
+}
@@ -0,0 +1,92 @@
+package syspro.tm;
+
+import java.lang.foreign.Arena;
+import java.lang.foreign.MemorySegment;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Bounded process-wide cache of NUL-terminated UTF-8 copies of Java strings.
+ * <p>
+ * Identifiers, keywords, symbol names and error codes repeat across calls, so they are encoded once instead of once per call.
+ * Entries are striped by {@link String#hashCode()} and evicted in least-recently-used order.
+ * Every entry is allocated in its own automatic arena: an evicted segment is freed by the GC once no {@link LibraryCall}
+ * that serialized it is still running (the call keeps the segment reachable for its whole duration, see {@link LibraryCall#makeCall()}).
+ */
+final class NativeStringPool {
+    /**
+     * Longer strings (e.g. string literals in tests) rarely repeat and are not worth keeping around.
+     */
+    static final int MAX_POOLED_LENGTH = 256;
+
+    private final Stripe[] stripes;
+    private final int stripeMask;
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+
+    NativeStringPool(int capacity) {
+        final var processors = Math.max(Runtime.getRuntime().availableProcessors(), 1);
+        final var stripeCount = Integer.highestOneBit(processors * 4 - 1) << 1;
+        this.stripes = new Stripe[stripeCount];
+        for (var i = 0; i < stripeCount; i++) {
+            this.stripes[i] = new Stripe(Math.max(capacity / stripeCount, 1));
+        }
+        this.stripeMask = stripeCount - 1;
+    }
+
+    MemorySegment get(String string) {
+        assert string.length() <= MAX_POOLED_LENGTH;
+        final var hash = string.hashCode();
+        final var stripe = stripes[(hash ^ (hash >>> 16)) & stripeMask];
+        synchronized (stripe) {
+            final var segment = stripe.get(string);
+            if (segment != null) {
+                hits.increment();
+                return segment;
+            }
+
+            misses.increment();
+            final var newSegment = Arena.ofAuto().allocateFrom(string);
+            stripe.put(string, newSegment);
+            return newSegment;
+        }
+    }
+
+    long hits() {
+        return hits.sum();
+    }
+
+    long misses() {
+        return misses.sum();
+    }
+
+    long evictions() {
+        return evictions.sum();
+    }
+
+    @Override
+    public String toString() {
+        return "NativeStringPool{hits=" + hits() + ", misses=" + misses() + ", evictions=" + evictions() + '}';
+    }
+
+    private final class Stripe extends LinkedHashMap<String, MemorySegment> {
+        private final int capacity;
+
+        Stripe(int capacity) {
+            super(16, 0.75f, true);
+            this.capacity = capacity;
+        }
+
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, MemorySegment> eldest) {
+            if (size() <= capacity) {
+                return false;
+            }
+
+            evictions.increment();
+            return true;
+        }
+    }
+}
@@ -11,10 +11,22 @@ import java.lang.foreign.ValueLayout;
 import java.lang.invoke.MethodHandles;
 import java.lang.invoke.MethodType;
 import java.util.*;
+import java.util.function.ToIntFunction;
 
 import static syspro.tm.Library.*;
+import static syspro.tm.NativeAbi.*;
 
 final class TokenObjectDescriptor extends ObjectDescriptor<Token> {
+    private final Field kind = field("kind");
+    private final Field start = field("start");
+    private final Field end = field("end");
+    private final Field leadingTriviaLength = field("leadingTriviaLength");
+    private final Field trailingTriviaLength = field("trailingTriviaLength");
+    private final Field type = field("type");
+    private final Field value1 = field("value1");
+    private final Field value2 = field("value2");
+    private final Field value3 = field("value3");
+
     public TokenObjectDescriptor() {
         super(
                 MemoryLayout.structLayout(
@@ -37,51 +49,186 @@ final class TokenObjectDescriptor extends ObjectDescriptor<Token> {
             case BadToken _ -> 0;
             case IdentifierToken _ -> 3;
             case IndentationToken indentationToken -> indentationToken.isIndent() ? 1 : 2;
-            case KeywordToken keywordToken -> Library.tokenKind(keywordToken.keyword);
+            case KeywordToken keywordToken -> NativeAbi.tokenKind(keywordToken.keyword);
             case BooleanLiteralToken _ -> 4;
             case IntegerLiteralToken _ -> 5;
             case RuneLiteralToken _ -> 6;
             case StringLiteralToken _ -> 7;
-            case SymbolToken symbolToken -> Library.tokenKind(symbolToken.symbol);
+            case SymbolToken symbolToken -> NativeAbi.tokenKind(symbolToken.symbol);
+        };
+    }
+
+    private static int tokenKind(AnySyntaxKind kind) {
+        return switch (kind) {
+            case Keyword keyword -> NativeAbi.tokenKind(keyword);
+            case Symbol symbol -> NativeAbi.tokenKind(symbol);
+            case SyntaxKind.BAD -> 0;
+            case SyntaxKind.INDENT -> 1;
+            case SyntaxKind.DEDENT -> 2;
+            case SyntaxKind.IDENTIFIER -> 3;
+            case SyntaxKind.BOOLEAN -> 4;
+            case SyntaxKind.INTEGER -> 5;
+            case SyntaxKind.RUNE -> 6;
+            case SyntaxKind.STRING -> 7;
+            default -> throw new RuntimeException("Unexpected token kind " + kind);
         };
     }
 
+    /**
+     * Same as {@link TokenObjectDescriptor#serialize(Token, ObjectWriter)}, without materializing the token.
+     */
+    void serialize(TokenBuffer tokens, int index, ObjectWriter writer) {
+        final var tokenKind = tokens.kind(index);
+        writer.set(kind, tokenKind(tokenKind));
+        writer.set(start, tokens.start(index));
+        writer.set(end, tokens.end(index));
+        writer.set(leadingTriviaLength, tokens.leadingTriviaLength(index));
+        writer.set(trailingTriviaLength, tokens.trailingTriviaLength(index));
+        switch (tokenKind) {
+            case SyntaxKind.IDENTIFIER -> {
+                final var contextualKeyword = tokens.contextualKeyword(index);
+                writer.set(value1, tokens.stringValue(index));
+                writer.set(value3, (long) (contextualKeyword != null ? NativeAbi.tokenKind(contextualKeyword) : 0));
+            }
+            case SyntaxKind.BOOLEAN -> {
+                writer.set(type, tokens.type(index));
+                writer.set(value2, tokens.value(index));
+            }
+            case SyntaxKind.INTEGER -> {
+                writer.set(type, tokens.type(index));
+                writer.set(value2, tokens.value(index));
+                writer.set(value3, tokens.hasTypeSuffix(index) ? 1L : 0);
+            }
+            case SyntaxKind.RUNE -> {
+                writer.set(type, tokens.type(index));
+                writer.set(value3, tokens.value(index));
+            }
+            case SyntaxKind.STRING -> {
+                writer.set(type, tokens.type(index));
+                writer.set(value1, tokens.stringValue(index));
+            }
+            default -> {
+            }
+        }
+    }
+
     @Override
-    public void serialize(Token token) {
-        set("kind", tokenKind(token));
-        set("start", token.start);
-        set("end", token.end);
-        set("leadingTriviaLength", token.leadingTriviaLength);
-        set("trailingTriviaLength", token.trailingTriviaLength);
+    public void serialize(Token token, ObjectWriter writer) {
+        writer.set(kind, tokenKind(token));
+        writer.set(start, token.start);
+        writer.set(end, token.end);
+        writer.set(leadingTriviaLength, token.leadingTriviaLength);
+        writer.set(trailingTriviaLength, token.trailingTriviaLength);
         switch (token) {
             case IdentifierToken identifierToken:
-                set("value1", identifierToken.value);
-                set("value3", (long) (identifierToken.contextualKeyword != null ? Library.tokenKind(identifierToken.contextualKeyword) : 0));
+                writer.set(value1, identifierToken.value);
+                writer.set(value3, (long) (identifierToken.contextualKeyword != null ? NativeAbi.tokenKind(identifierToken.contextualKeyword) : 0));
                 break;
             case BadToken _, IndentationToken _, KeywordToken _, SymbolToken _:
                 break;
             case BooleanLiteralToken literalToken:
-                set("type", literalToken.type);
-                set("value2", literalToken.value ? 1L : 0);
+                writer.set(type, literalToken.type);
+                writer.set(value2, literalToken.value ? 1L : 0);
                 break;
             case IntegerLiteralToken literalToken:
-                set("type", literalToken.type);
-                set("value2", literalToken.value);
-                set("value3", literalToken.hasTypeSuffix ? 1L : 0);
+                writer.set(type, literalToken.type);
+                writer.set(value2, literalToken.value);
+                writer.set(value3, literalToken.hasTypeSuffix ? 1L : 0);
                 break;
             case RuneLiteralToken literalToken:
-                set("type", literalToken.type);
-                set("value3", (long) literalToken.value);
+                writer.set(type, literalToken.type);
+                writer.set(value3, (long) literalToken.value);
                 break;
             case StringLiteralToken literalToken:
-                set("type", literalToken.type);
-                set("value1", literalToken.value);
+                writer.set(type, literalToken.type);
+                writer.set(value1, literalToken.value);
                 break;
         }
     }
 }
 
+/**
+ * Packed alternative to {@link IterableObjectDescriptor} for {@link Lexer#lex(String)} results:
+ * tokens are written by value in {@link TokenObjectDescriptor} layout, so a single request transfers the whole list.
+ * {@link TokenBuffer} is copied straight from its arrays, without creating {@link Token} objects.
+ * <p>
+ * Native code requests it for the handle returned from {@code lex}, once it negotiates {@link NativeAbi#TOKEN_LIST_KIND}.
+ * The result can't be pushed with the lexer's return value: the upcall returns a single handle by ABI.
+ */
+final class TokenListObjectDescriptor extends ObjectDescriptor<List<Token>> {
+    private final TokenObjectDescriptor tokenDescriptor = new TokenObjectDescriptor();
+    private final Field size = field("size");
+    private final Field data = field("data");
+
+    public TokenListObjectDescriptor() {
+        //noinspection unchecked
+        super(
+                MemoryLayout.structLayout(
+                        ValueLayout.JAVA_INT.withName("size"),
+                        ValueLayout.JAVA_INT, // padding
+                        ARRAY_LAYOUT.withName("data")
+                ),
+                (Class<List<Token>>) (Class) List.class
+        );
+    }
+
+    @Override
+    public void serialize(List<Token> tokens, ObjectWriter writer) {
+        final var tokenLayout = tokenDescriptor.layout;
+        final var count = tokens.size();
+        final var array = writer.allocate(tokenLayout, count);
+        final var tokenWriter = writer.writerFor(array);
+        final var buffer = tokens instanceof CachedTokenList cached ? cached.buffer : tokens instanceof TokenBuffer tokenBuffer ? tokenBuffer : null;
+        if (buffer != null) {
+            for (var i = 0; i < count; i++) {
+                tokenWriter.moveTo(tokenLayout.byteSize() * i);
+                tokenDescriptor.serialize(buffer, i, tokenWriter);
+            }
+        } else {
+            for (var i = 0; i < count; i++) {
+                tokenWriter.moveTo(tokenLayout.byteSize() * i);
+                tokenDescriptor.serialize(tokens.get(i), tokenWriter);
+            }
+        }
+
+        writer.set(size, count);
+        writer.set(data, array);
+    }
+}
+
+/**
+ * {@link TokenBuffer} creates a new {@link Token} on every {@link TokenBuffer#get(int)}. Native code might fetch
+ * the same element more than once via {@link IterableObjectDescriptor}, which would register a new handle every time,
+ * so the tokens are materialized at most once per index. Concurrent fetches might race, which is benign: tokens are immutable.
+ */
+final class CachedTokenList extends AbstractList<Token> implements RandomAccess {
+    final TokenBuffer buffer;
+    private final Token[] tokens;
+
+    CachedTokenList(TokenBuffer buffer) {
+        this.buffer = buffer;
+        this.tokens = new Token[buffer.size()];
+    }
+
+    @Override
+    public Token get(int index) {
+        var token = tokens[index];
+        if (token == null) {
+            tokens[index] = token = buffer.get(index);
+        }
+        return token;
+    }
+
+    @Override
+    public int size() {
+        return tokens.length;
+    }
+}
+
 final class IterableObjectDescriptor extends ObjectDescriptor<Iterable<Object>> {
+    private final Field size = field("size");
+    private final Field data = field("data");
+
     public IterableObjectDescriptor() {
         //noinspection unchecked
         super(
@@ -96,7 +243,7 @@ final class IterableObjectDescriptor extends ObjectDescriptor<Iterable<Object>>
 
     @SuppressWarnings("unchecked")
     @Override
-    public void serialize(Iterable<Object> items) {
+    public void serialize(Iterable<Object> items, ObjectWriter writer) {
         List<Object> list;
         if (items instanceof List<?> itemsList) {
             list = (List<Object>) itemsList;
@@ -109,13 +256,15 @@ final class IterableObjectDescriptor extends ObjectDescriptor<Iterable<Object>>
             }
         }
 
-        set("size", list.size());
-        setArray("data", list);
+        writer.set(size, list.size());
+        writer.setArray(data, list);
     }
 }
 
 final class LexerObjectDescriptor extends ObjectDescriptor<Lexer> {
     private static volatile MemorySegment lexImpl;
+    private final Field impl = field("impl");
+    private final Field lex = field("lex");
 
     public LexerObjectDescriptor() {
         super(
@@ -148,25 +297,31 @@ final class LexerObjectDescriptor extends ObjectDescriptor<Lexer> {
     }
 
     private static long lexImpl(long impl, MemorySegment codeSegment) {
+        final var scope = openObjectScope();
         try {
             final Lexer lexer = fromObjectHandle(impl);
-            final var code = codeSegment.reinterpret(Integer.MAX_VALUE).getString(0);
-            return toObjectHandle(List.copyOf(lexer.lex(code)));
+            try (final var code = NativeSourceText.of(codeSegment)) {
+                final var tokens = lexer.lex(code);
+                // Keep the compact representation, List.copyOf would materialize every token.
+                return publishObject(scope, tokens instanceof TokenBuffer buffer ? new CachedTokenList(buffer.copy()) : List.copyOf(tokens));
+            }
         } catch (Throwable e) {
             fatalError(e);
-            return toObjectHandle(null);
+            return publishObject(scope, null);
         }
     }
 
     @Override
-    public void serialize(Lexer lexer) {
-        set("impl", lexer);
-        set("lex", lexImpl());
+    public void serialize(Lexer lexer, ObjectWriter writer) {
+        writer.set(impl, lexer);
+        writer.set(lex, lexImpl());
     }
 }
 
 final class ParserObjectDescriptor extends ObjectDescriptor<Parser> {
     private static volatile MemorySegment parseImpl;
+    private final Field impl = field("impl");
+    private final Field parse = field("parse");
 
     public ParserObjectDescriptor() {
         super(
@@ -179,13 +334,15 @@ final class ParserObjectDescriptor extends ObjectDescriptor<Parser> {
     }
 
     private static long parseImpl(long impl, MemorySegment codeSegment) {
+        final var scope = openObjectScope();
         try {
             final Parser parser = fromObjectHandle(impl);
-            final var code = codeSegment.reinterpret(Integer.MAX_VALUE).getString(0);
-            return toObjectHandle(parser.parse(code));
+            try (final var code = NativeSourceText.of(codeSegment)) {
+                return publishObject(scope, parser.parse(code));
+            }
         } catch (Throwable e) {
             fatalError(e);
-            return toObjectHandle(null);
+            return publishObject(scope, null);
         }
     }
 
@@ -210,13 +367,17 @@ final class ParserObjectDescriptor extends ObjectDescriptor<Parser> {
     }
 
     @Override
-    public void serialize(Parser parser) {
-        set("impl", parser);
-        set("parse", parseImpl());
+    public void serialize(Parser parser, ObjectWriter writer) {
+        writer.set(impl, parser);
+        writer.set(parse, parseImpl());
     }
 }
 
 final class ParseResultObjectDescriptor extends ObjectDescriptor<ParseResult> {
+    private final Field root = field("root");
+    private final Field invalidRanges = field("invalidRanges");
+    private final Field diagnostics = field("diagnostics");
+
     public ParseResultObjectDescriptor() {
         super(
                 MemoryLayout.structLayout(
@@ -229,14 +390,24 @@ final class ParseResultObjectDescriptor extends ObjectDescriptor<ParseResult> {
     }
 
     @Override
-    public void serialize(ParseResult result) {
-        set("root", result.root());
-        set("invalidRanges", List.copyOf(result.invalidRanges()));
-        set("diagnostics", List.copyOf(result.diagnostics()));
+    public void serialize(ParseResult result, ObjectWriter writer) {
+        writer.set(root, result.root());
+        writer.set(invalidRanges, List.copyOf(result.invalidRanges()));
+        writer.set(diagnostics, List.copyOf(result.diagnostics()));
     }
 }
 
 final class SyntaxNodeObjectDescriptor extends ObjectDescriptor<SyntaxNode> {
+    private final Field kind = field("kind");
+    private final Field position = field("position");
+    private final Field fullLength = field("fullLength");
+    private final Field leadingTriviaLength = field("leadingTriviaLength");
+    private final Field trailingTriviaLength = field("trailingTriviaLength");
+    private final Field slotCount = field("slotCount");
+    private final Field token = field("token");
+    private final Field slots = field("slots");
+    private final Field symbol = field("symbol");
+
     public SyntaxNodeObjectDescriptor() {
         super(
                 MemoryLayout.structLayout(
@@ -255,7 +426,7 @@ final class SyntaxNodeObjectDescriptor extends ObjectDescriptor<SyntaxNode> {
     }
 
     @Override
-    public void serialize(SyntaxNode node) {
+    public void serialize(SyntaxNode node, ObjectWriter writer) {
         final var nodeSlotCount = node.slotCount();
         final List<SyntaxNode> nodeSlots;
         if (nodeSlotCount == 0) {
@@ -267,52 +438,278 @@ final class SyntaxNodeObjectDescriptor extends ObjectDescriptor<SyntaxNode> {
             }
         }
 
-        set("kind", syntaxKind(node.kind()));
-        int position;
-        try {
-            position = node.position();
-        } catch (Throwable e) {
-            e.printStackTrace();
-            position = -1;
+        writer.set(kind, syntaxKind(node.kind()));
+        writeMetrics(node, writer, position, fullLength, leadingTriviaLength, trailingTriviaLength);
+        writer.set(slotCount, nodeSlotCount);
+        writer.set(token, node.token());
+        writer.set(slots, nodeSlots);
+
+        if (node instanceof SyntaxNodeWithSymbols withSymbols) {
+            writer.set(symbol, withSymbols.symbol());
+        } else {
+            writer.setNull(symbol);
         }
-        int fullLength;
-        try {
-            fullLength = node.fullLength();
-        } catch (Throwable e) {
-            e.printStackTrace();
-            fullLength = -1;
+    }
+
+    static void writeMetrics(SyntaxNode node, ObjectWriter writer, Field position, Field fullLength, Field leadingTriviaLength, Field trailingTriviaLength) {
+        final var terminals = writer.nodeMetrics().terminals(node);
+        if (terminals != null) {
+            writer.set(position, terminals.position());
+            writer.set(fullLength, terminals.fullLength());
+            writer.set(leadingTriviaLength, terminals.leadingTriviaLength());
+            writer.set(trailingTriviaLength, terminals.trailingTriviaLength());
+            return;
         }
-        int leadingTriviaLength;
+
+        writer.set(position, orInvalid(node, SyntaxNode::position));
+        writer.set(fullLength, orInvalid(node, SyntaxNode::fullLength));
+        writer.set(leadingTriviaLength, orInvalid(node, SyntaxNode::leadingTriviaLength));
+        writer.set(trailingTriviaLength, orInvalid(node, SyntaxNode::trailingTriviaLength));
+    }
+
+    /**
+     * Student implementations might throw from any of these methods, which shouldn't stop the whole tree from being serialized.
+     */
+    static int orInvalid(SyntaxNode node, ToIntFunction<SyntaxNode> property) {
         try {
-            leadingTriviaLength = node.leadingTriviaLength();
+            return property.applyAsInt(node);
         } catch (Throwable e) {
             e.printStackTrace();
-            leadingTriviaLength = -1;
+            return -1;
         }
-        int trailingTriviaLength;
-        try {
-            trailingTriviaLength = node.trailingTriviaLength();
-        } catch (Throwable e) {
-            e.printStackTrace();
-            trailingTriviaLength = -1;
+    }
+}
+
+/**
+ * Bulk alternative to {@link SyntaxNodeObjectDescriptor}: serializes the whole tree rooted at the requested node
+ * with a single {@code registerObjectImpl} round-trip, instead of one round-trip per batch of slots.
+ * <p>
+ * The tree is written into one contiguous buffer: a header, then nodes in pre-order, then slots,
+ * which refer to other nodes by their index in the node array. The header stores the offsets of both arrays.
+ * Tokens are stored inline in {@link TokenObjectDescriptor} layout, so no token handles are created.
+ * Shared subtrees (and loops in malformed trees) are written once and referenced by index from every parent.
+ * <p>
+ * Only requested by SysPro.TM.Library builds that negotiate {@link NativeAbi#SYNTAX_TREE_KIND}, see {@link Library#objectKindCount()}.
+ */
+final class SyntaxTreeObjectDescriptor extends ObjectDescriptor<SyntaxNode> {
+    private static final MemoryLayout HEADER_LAYOUT = MemoryLayout.structLayout(
+            ValueLayout.JAVA_INT.withName("nodeCount"),
+            ValueLayout.JAVA_INT.withName("slotIndexCount"),
+            ValueLayout.JAVA_LONG.withName("nodesOffset"),
+            ValueLayout.JAVA_LONG.withName("slotIndicesOffset")
+    );
+    private static final int NULL_SLOT = -1;
+
+    private final TokenObjectDescriptor tokenDescriptor = new TokenObjectDescriptor();
+    private final MemoryLayout nodeLayout = MemoryLayout.structLayout(
+            ValueLayout.JAVA_INT.withName("kind"),
+            ValueLayout.JAVA_INT.withName("position"),
+            ValueLayout.JAVA_INT.withName("fullLength"),
+            ValueLayout.JAVA_INT.withName("leadingTriviaLength"),
+            ValueLayout.JAVA_INT.withName("trailingTriviaLength"),
+            ValueLayout.JAVA_INT.withName("slotCount"),
+            ValueLayout.JAVA_INT.withName("firstSlot"),
+            ValueLayout.JAVA_INT.withName("hasToken"),
+            JVM_HANDLE_LAYOUT.withName("node"),
+            JVM_HANDLE_LAYOUT.withName("symbol"),
+            tokenDescriptor.layout.withName("token")
+    );
+    private final Field tree = field("tree");
+    private final Field nodeCount = field(HEADER_LAYOUT, "nodeCount");
+    private final Field slotIndexCount = field(HEADER_LAYOUT, "slotIndexCount");
+    private final Field nodesOffset = field(HEADER_LAYOUT, "nodesOffset");
+    private final Field slotIndicesOffset = field(HEADER_LAYOUT, "slotIndicesOffset");
+    private final Field kind = field(nodeLayout, "kind");
+    private final Field position = field(nodeLayout, "position");
+    private final Field fullLength = field(nodeLayout, "fullLength");
+    private final Field leadingTriviaLength = field(nodeLayout, "leadingTriviaLength");
+    private final Field trailingTriviaLength = field(nodeLayout, "trailingTriviaLength");
+    private final Field slotCount = field(nodeLayout, "slotCount");
+    private final Field firstSlot = field(nodeLayout, "firstSlot");
+    private final Field hasToken = field(nodeLayout, "hasToken");
+    private final Field node = field(nodeLayout, "node");
+    private final Field symbol = field(nodeLayout, "symbol");
+    private final Field token = field(nodeLayout, "token");
+
+    public SyntaxTreeObjectDescriptor() {
+        super(
+                MemoryLayout.structLayout(
+                        ARRAY_LAYOUT.withName("tree")
+                ),
+                SyntaxNode.class
+        );
+    }
+
+    @Override
+    public void serialize(SyntaxNode root, ObjectWriter writer) {
+        final var indices = new NodeIndices();
+        var preorder = new SyntaxNode[16];
+        var firstSlots = new int[16];
+        var slotNodes = new SyntaxNode[16];
+        var stack = new SyntaxNode[16];
+        var preorderSize = 0;
+        var slotNodesSize = 0;
+        var stackSize = 0;
+        stack[stackSize++] = root;
+
+        while (stackSize > 0) {
+            final var current = stack[--stackSize];
+            stack[stackSize] = null;
+            if (!indices.add(current, preorderSize)) {
+                continue;
+            }
+
+            if (preorderSize == preorder.length) {
+                preorder = Arrays.copyOf(preorder, preorderSize * 2);
+                firstSlots = Arrays.copyOf(firstSlots, preorderSize * 2);
+            }
+            preorder[preorderSize] = current;
+            firstSlots[preorderSize] = slotNodesSize;
+            preorderSize++;
+
+            final var currentSlotCount = current.slotCount();
+            if (slotNodesSize + currentSlotCount > slotNodes.length) {
+                slotNodes = Arrays.copyOf(slotNodes, Math.max(slotNodes.length * 2, slotNodesSize + currentSlotCount));
+            }
+            if (stackSize + currentSlotCount > stack.length) {
+                stack = Arrays.copyOf(stack, Math.max(stack.length * 2, stackSize + currentSlotCount));
+            }
+            final var firstChild = slotNodesSize;
+            for (var i = 0; i < currentSlotCount; i++) {
+                slotNodes[slotNodesSize++] = current.slot(i);
+            }
+            for (var i = slotNodesSize - 1; i >= firstChild; i--) {
+                final var child = slotNodes[i];
+                if (child != null) {
+                    stack[stackSize++] = child;
+                }
+            }
         }
-        set("position", position);
-        set("fullLength", fullLength);
-        set("leadingTriviaLength", leadingTriviaLength);
-        set("trailingTriviaLength", trailingTriviaLength);
-        set("slotCount", nodeSlotCount);
-        set("token", node.token());
-        set("slots", nodeSlots);
 
-        if (node instanceof SyntaxNodeWithSymbols withSymbols) {
-            set("symbol", withSymbols.symbol());
-        } else {
-            setNull("symbol");
+        final var nodeSize = nodeLayout.byteSize();
+        final var nodesStart = alignUp(HEADER_LAYOUT.byteSize(), nodeLayout.byteAlignment());
+        final var slotsStart = alignUp(nodesStart + nodeSize * preorderSize, ValueLayout.JAVA_INT.byteAlignment());
+        final var buffer = writer.allocate(slotsStart + ValueLayout.JAVA_INT.byteSize() * slotNodesSize,
+                Math.max(HEADER_LAYOUT.byteAlignment(), nodeLayout.byteAlignment()));
+        final var bufferWriter = writer.writerFor(buffer);
+        final var tokenWriter = writer.writerFor(buffer);
+
+        bufferWriter.set(nodeCount, preorderSize);
+        bufferWriter.set(slotIndexCount, slotNodesSize);
+        bufferWriter.set(nodesOffset, nodesStart);
+        bufferWriter.set(slotIndicesOffset, slotsStart);
+
+        for (var i = 0; i < slotNodesSize; i++) {
+            final var child = slotNodes[i];
+            buffer.set(ValueLayout.JAVA_INT, slotsStart + ValueLayout.JAVA_INT.byteSize() * i,
+                    child == null ? NULL_SLOT : indices.get(child));
+        }
+
+        for (var i = 0; i < preorderSize; i++) {
+            final var current = preorder[i];
+            final var currentFirstSlot = firstSlots[i];
+            final var nextFirstSlot = i + 1 < preorderSize ? firstSlots[i + 1] : slotNodesSize;
+            final var nodeStart = nodesStart + nodeSize * i;
+
+            bufferWriter.moveTo(nodeStart);
+            bufferWriter.set(kind, syntaxKind(current.kind()));
+            SyntaxNodeObjectDescriptor.writeMetrics(current, bufferWriter, position, fullLength, leadingTriviaLength, trailingTriviaLength);
+            bufferWriter.set(slotCount, nextFirstSlot - currentFirstSlot);
+            bufferWriter.set(firstSlot, currentFirstSlot);
+            bufferWriter.set(node, current);
+            if (current instanceof SyntaxNodeWithSymbols withSymbols) {
+                bufferWriter.set(symbol, withSymbols.symbol());
+            } else {
+                bufferWriter.setNull(symbol);
+            }
+
+            final var currentToken = current.token();
+            bufferWriter.set(hasToken, currentToken != null);
+            if (currentToken != null) {
+                tokenWriter.moveTo(nodeStart + token.offset);
+                tokenDescriptor.serialize(currentToken, tokenWriter);
+            }
+        }
+
+        writer.set(tree, buffer);
+    }
+
+    private static long alignUp(long offset, long alignment) {
+        return (offset + alignment - 1) & -alignment;
+    }
+
+    /**
+     * Identity map from nodes to their pre-order indices, open addressing without boxing.
+     */
+    private static final class NodeIndices {
+        private SyntaxNode[] keys = new SyntaxNode[64];
+        private int[] values = new int[64];
+        private int size;
+
+        /**
+         * @return {@code false} if the node already has an index
+         */
+        boolean add(SyntaxNode key, int value) {
+            if ((size + 1) * 2 > keys.length) {
+                resize();
+            }
+
+            final var mask = keys.length - 1;
+            for (var slot = hash(key) & mask; ; slot = (slot + 1) & mask) {
+                final var existing = keys[slot];
+                if (existing == key) {
+                    return false;
+                }
+                if (existing == null) {
+                    keys[slot] = key;
+                    values[slot] = value;
+                    size++;
+                    return true;
+                }
+            }
+        }
+
+        int get(SyntaxNode key) {
+            final var mask = keys.length - 1;
+            for (var slot = hash(key) & mask; ; slot = (slot + 1) & mask) {
+                if (keys[slot] == key) {
+                    return values[slot];
+                }
+            }
+        }
+
+        private void resize() {
+            final var oldKeys = keys;
+            final var oldValues = values;
+            keys = new SyntaxNode[oldKeys.length * 2];
+            values = new int[oldKeys.length * 2];
+            final var mask = keys.length - 1;
+            for (var i = 0; i < oldKeys.length; i++) {
+                final var key = oldKeys[i];
+                if (key == null) {
+                    continue;
+                }
+
+                var slot = hash(key) & mask;
+                while (keys[slot] != null) {
+                    slot = (slot + 1) & mask;
+                }
+                keys[slot] = key;
+                values[slot] = oldValues[i];
+            }
+        }
+
+        private static int hash(SyntaxNode key) {
+            final var hash = System.identityHashCode(key);
+            return hash ^ (hash >>> 16);
         }
     }
 }
 
 final class TextSpanObjectDescriptor extends ObjectDescriptor<TextSpan> {
+    private final Field start = field("start");
+    private final Field length = field("length");
+
     public TextSpanObjectDescriptor() {
         super(
                 MemoryLayout.structLayout(
@@ -324,13 +721,18 @@ final class TextSpanObjectDescriptor extends ObjectDescriptor<TextSpan> {
     }
 
     @Override
-    public void serialize(TextSpan span) {
-        set("start", span.start);
-        set("length", span.length);
+    public void serialize(TextSpan span, ObjectWriter writer) {
+        writer.set(start, span.start);
+        writer.set(length, span.length);
     }
 }
 
 final class DiagnosticObjectDescriptor extends ObjectDescriptor<Diagnostic> {
+    private final Field errorCode = field("errorCode");
+    private final Field arguments = field("arguments");
+    private final Field location = field("location");
+    private final Field hints = field("hints");
+
     public DiagnosticObjectDescriptor() {
         super(
                 MemoryLayout.structLayout(
@@ -344,20 +746,22 @@ final class DiagnosticObjectDescriptor extends ObjectDescriptor<Diagnostic> {
     }
 
     @Override
-    public void serialize(Diagnostic diagnostic) {
+    public void serialize(Diagnostic diagnostic, ObjectWriter writer) {
         final var argumentsArray = diagnostic.arguments();
         final var diagnosticArguments = new DiagnosticArgument[argumentsArray.length];
         for (var i = 0; i < argumentsArray.length; i++) {
             diagnosticArguments[i] = new DiagnosticArgument(argumentsArray[i]);
         }
-        set("errorCode", diagnostic.errorCode());
-        set("arguments", Arrays.asList(diagnosticArguments));
-        set("location", diagnostic.location());
-        set("hints", diagnostic.hints());
+        writer.set(errorCode, diagnostic.errorCode());
+        writer.set(arguments, Arrays.asList(diagnosticArguments));
+        writer.set(location, diagnostic.location());
+        writer.set(hints, diagnostic.hints());
     }
 }
 
 final class ErrorCodeObjectDescriptor extends ObjectDescriptor<ErrorCode> {
+    private final Field name = field("name");
+
     public ErrorCodeObjectDescriptor() {
         super(
                 MemoryLayout.structLayout(
@@ -368,12 +772,15 @@ final class ErrorCodeObjectDescriptor extends ObjectDescriptor<ErrorCode> {
     }
 
     @Override
-    public void serialize(ErrorCode errorCode) {
-        set("name", errorCode.name());
+    public void serialize(ErrorCode errorCode, ObjectWriter writer) {
+        writer.set(name, errorCode.name());
     }
 }
 
 final class DiagnosticArgumentObjectDescriptor extends ObjectDescriptor<DiagnosticArgument> {
+    private final Field stringValue = field("stringValue");
+    private final Field nodeValue = field("nodeValue");
+
     public DiagnosticArgumentObjectDescriptor() {
         super(
                 MemoryLayout.structLayout(
@@ -385,10 +792,10 @@ final class DiagnosticArgumentObjectDescriptor extends ObjectDescriptor<Diagnost
     }
 
     @Override
-    public void serialize(DiagnosticArgument argument) {
+    public void serialize(DiagnosticArgument argument, ObjectWriter writer) {
         final var object = argument.object;
-        set("stringValue", Objects.toString(object));
-        set("nodeValue", object instanceof SyntaxNode ? object : null);
+        writer.set(stringValue, Objects.toString(object));
+        writer.set(nodeValue, object instanceof SyntaxNode ? object : null);
     }
 }
 
@@ -402,6 +809,8 @@ final class DiagnosticArgument {
 
 final class LanguageServerObjectDescriptor extends ObjectDescriptor<LanguageServer> {
     private static volatile MemorySegment buildModelImpl;
+    private final Field impl = field("impl");
+    private final Field buildModel = field("buildModel");
 
     public LanguageServerObjectDescriptor() {
         super(
@@ -434,25 +843,33 @@ final class LanguageServerObjectDescriptor extends ObjectDescriptor<LanguageServ
     }
 
     private static long buildModelImpl(long impl, MemorySegment codeSegment) {
+        final var scope = openObjectScope();
         try {
             final LanguageServer server = fromObjectHandle(impl);
-            final var code = codeSegment.reinterpret(Integer.MAX_VALUE).getString(0);
-            return toObjectHandle(server.buildModel(code));
+            try (final var code = NativeSourceText.of(codeSegment)) {
+                return publishObject(scope, server.buildModel(code));
+            }
         } catch (Throwable e) {
             fatalError(e);
-            return toObjectHandle(null);
+            return publishObject(scope, null);
         }
     }
 
     @Override
-    public void serialize(LanguageServer server) {
-        set("impl", server);
-        set("buildModel", buildModelImpl());
+    public void serialize(LanguageServer server, ObjectWriter writer) {
+        writer.set(impl, server);
+        writer.set(buildModel, buildModelImpl());
     }
 }
 
 final class SemanticModelObjectDescriptor extends ObjectDescriptor<SemanticModel> {
     private static volatile MemorySegment lookupTypeImpl;
+    private final Field impl = field("impl");
+    private final Field root = field("root");
+    private final Field invalidRanges = field("invalidRanges");
+    private final Field diagnostics = field("diagnostics");
+    private final Field typeDefinitions = field("typeDefinitions");
+    private final Field lookupType = field("lookupType");
 
     public SemanticModelObjectDescriptor() {
         super(
@@ -492,7 +909,7 @@ final class SemanticModelObjectDescriptor extends ObjectDescriptor<SemanticModel
         try {
             final SemanticModel model = fromObjectHandle(impl);
             final var name = codeSegment.reinterpret(Integer.MAX_VALUE).getString(0);
-            return toObjectHandle(model.lookupType(name));
+            return toObjectHandle(model.lookupType(name), objectScope(impl));
         } catch (Throwable e) {
             fatalError(e);
             return toObjectHandle(null);
@@ -500,18 +917,29 @@ final class SemanticModelObjectDescriptor extends ObjectDescriptor<SemanticModel
     }
 
     @Override
-    public void serialize(SemanticModel model) {
-        set("impl", model);
-        set("root", model.root());
-        set("invalidRanges", List.copyOf(model.invalidRanges()));
-        set("diagnostics", List.copyOf(model.diagnostics()));
-        set("typeDefinitions", List.copyOf(model.typeDefinitions()));
-        set("lookupType", lookupTypeImpl());
+    public void serialize(SemanticModel model, ObjectWriter writer) {
+        writer.set(impl, model);
+        writer.set(root, model.root());
+        writer.set(invalidRanges, List.copyOf(model.invalidRanges()));
+        writer.set(diagnostics, List.copyOf(model.diagnostics()));
+        writer.set(typeDefinitions, List.copyOf(model.typeDefinitions()));
+        writer.set(lookupType, lookupTypeImpl());
     }
 }
 
 final class SemanticSymbolObjectDescriptor extends ObjectDescriptor<SemanticSymbol> {
     private static volatile MemorySegment constructImpl;
+    private final Field impl = field("impl");
+    private final Field definition = field("definition");
+    private final Field owner = field("owner");
+    private final Field param1 = field("param1");
+    private final Field param2 = field("param2");
+    private final Field param3 = field("param3");
+    private final Field param4 = field("param4");
+    private final Field name = field("name");
+    private final Field construct = field("construct");
+    private final Field kind = field("kind");
+    private final Field flags = field("flags");
 
     public SemanticSymbolObjectDescriptor() {
         super(
@@ -556,7 +984,7 @@ final class SemanticSymbolObjectDescriptor extends ObjectDescriptor<SemanticSymb
         try {
             final TypeSymbol symbol = fromObjectHandle(impl);
             final List<TypeLikeSymbol> objects = List.of(readHandleArray(size, handleSegment));
-            return toObjectHandle(symbol.construct(objects));
+            return toObjectHandle(symbol.construct(objects), objectScope(impl));
         } catch (Throwable e) {
             fatalError(e);
             return toObjectHandle(null);
@@ -564,36 +992,36 @@ final class SemanticSymbolObjectDescriptor extends ObjectDescriptor<SemanticSymb
     }
 
     @Override
-    public void serialize(SemanticSymbol symbol) {
-        set("impl", symbol);
-        set("kind", symbolKind(symbol.kind()));
-        set("name", symbol.name());
-        set("definition", symbol.definition());
+    public void serialize(SemanticSymbol symbol, ObjectWriter writer) {
+        writer.set(impl, symbol);
+        writer.set(kind, symbolKind(symbol.kind()));
+        writer.set(name, symbol.name());
+        writer.set(definition, symbol.definition());
         if (symbol instanceof SemanticSymbolWithOwner withOwner) {
-            set("owner", withOwner.owner());
+            writer.set(owner, withOwner.owner());
         } else {
-            setNull("owner");
+            writer.setNull(owner);
         }
         switch (symbol) {
             case FunctionSymbol functionSymbol -> {
-                set("flags", functionSymbol.isNative(), functionSymbol.isVirtual(), functionSymbol.isAbstract(), functionSymbol.isOverride());
-                set("param1", functionSymbol.parameters());
-                set("param2", functionSymbol.returnType());
-                set("param3", functionSymbol.locals());
+                writer.set(flags, functionSymbol.isNative(), functionSymbol.isVirtual(), functionSymbol.isAbstract(), functionSymbol.isOverride());
+                writer.set(param1, functionSymbol.parameters());
+                writer.set(param2, functionSymbol.returnType());
+                writer.set(param3, functionSymbol.locals());
             }
             case VariableSymbol variableSymbol -> {
-                set("param1", variableSymbol.type());
+                writer.set(param1, variableSymbol.type());
             }
             case TypeSymbol typeSymbol -> {
-                set("flags", typeSymbol.isAbstract());
-                set("param1", typeSymbol.baseTypes());
-                set("param2", typeSymbol.typeArguments());
-                set("param3", typeSymbol.originalDefinition());
-                set("param4", typeSymbol.members());
-                set("construct", constructImpl());
+                writer.set(flags, typeSymbol.isAbstract());
+                writer.set(param1, typeSymbol.baseTypes());
+                writer.set(param2, typeSymbol.typeArguments());
+                writer.set(param3, typeSymbol.originalDefinition());
+                writer.set(param4, typeSymbol.members());
+                writer.set(construct, constructImpl());
             }
             case TypeParameterSymbol typeParameterSymbol -> {
-                set("param1", typeParameterSymbol.bounds());
+                writer.set(param1, typeParameterSymbol.bounds());
             }
         }
     }
@@ -0,0 +1,493 @@
+package syspro.tm;
+
+import java.time.Duration;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Bidirectional mapping between Java objects and JVM handles passed to SysPro.TM.Library.
+ * <p>
+ * Lookups by handle are lock-free: objects are stored in fixed-size pages, and pages are never moved once published.
+ * Pages are found through a radix tree of fixed-size directories, which grows in height as handles grow,
+ * so the whole non-negative {@code long} handle range is addressable without ever copying existing storage.
+ * Lookups by object identity are striped by {@link System#identityHashCode(Object)},
+ * so that native worker threads only contend when they register objects from the same stripe.
+ * <p>
+ * Handles used outside of any scope are {@link ObjectHandleTable#PINNED pinned} and live as long as the process.
+ * Every other handle counts the {@link Scope scopes} that use it, and is freed once all of them are reclaimed.
+ * A handle is also stamped with the latest scope that used it, objects requested through the handle are registered there.
+ * That scope waits for the older unreleased scopes using the handle: it is only reclaimed once they are released too,
+ * since their requests may still return those objects. Scopes that don't share handles are reclaimed independently.
+ * <p>
+ * Optionally, a scope that stays unreleased for longer than a timeout is considered abandoned and reported:
+ * its handles are pinned, and the scopes waiting for it are no longer held back.
+ */
+final class ObjectHandleTable {
+    static final long NULL_HANDLE = 0;
+    static final Scope PINNED = new Scope(0);
+    private static final int PAGE_BITS = 12;
+    private static final int PAGE_SIZE = 1 << PAGE_BITS;
+    private static final int PAGE_MASK = PAGE_SIZE - 1;
+    private static final int DIRECTORY_BITS = 10;
+    private static final int DIRECTORY_SIZE = 1 << DIRECTORY_BITS;
+    private static final int DIRECTORY_MASK = DIRECTORY_SIZE - 1;
+
+    private final Stripe[] stripes;
+    private final int stripeMask;
+    private final AtomicLong nextHandle = new AtomicLong(NULL_HANDLE + 1);
+    private final Object pageLock = new Object();
+    private volatile Root root = new Root(new Page(), 0);
+
+    private final long staleScopeNanos;
+    private final AtomicLong lastEpoch = new AtomicLong(PINNED.epoch);
+    private final ConcurrentHashMap<Long, Scope> publishedScopes = new ConcurrentHashMap<>();
+    /**
+     * Guards {@link Scope#isRetired}, {@link Scope#blockedBy}, {@link Scope#waiters} and {@link ObjectHandleTable#activeScopes}.
+     */
+    private final Object scopeLock = new Object();
+    /**
+     * Unreleased scopes in the order they were opened, only tracked with a stale scope timeout.
+     */
+    private final LinkedHashSet<Scope> activeScopes = new LinkedHashSet<>();
+
+    ObjectHandleTable() {
+        this(Duration.ZERO);
+    }
+
+    /**
+     * @param staleScopeTimeout how long a scope may stay unreleased before it is considered abandoned,
+     *                          {@link Duration#ZERO} to wait for native code indefinitely
+     */
+    ObjectHandleTable(Duration staleScopeTimeout) {
+        final var stripeCount = stripeCount(Runtime.getRuntime().availableProcessors());
+        this.stripes = new Stripe[stripeCount];
+        for (var i = 0; i < stripeCount; i++) {
+            this.stripes[i] = new Stripe();
+        }
+        this.stripeMask = stripeCount - 1;
+        this.staleScopeNanos = staleScopeTimeout.toNanos();
+    }
+
+    private static int stripeCount(int processors) {
+        // Next power of two, large enough to keep the collision rate between concurrent threads low.
+        return Integer.highestOneBit(Math.max(processors, 1) * 4 - 1) << 1;
+    }
+
+    private Stripe stripe(Object object) {
+        final var hash = System.identityHashCode(object);
+        return stripes[(hash ^ (hash >>> 16)) & stripeMask];
+    }
+
+    long toHandle(Object object, Scope scope) {
+        if (object == null) {
+            return NULL_HANDLE;
+        }
+
+        assert scope != null;
+        final var stripe = stripe(object);
+        synchronized (stripe) {
+            final var handle = stripe.handles.get(object);
+            if (handle != null) {
+                touch(handle, scope);
+                return handle;
+            }
+
+            final var newHandle = stripe.freeCount > 0 ? stripe.free[--stripe.freeCount] : nextHandle.getAndIncrement();
+            final var page = page(newHandle);
+            final var index = (int) (newHandle & PAGE_MASK);
+            final var isScoped = scope != PINNED && scope.add(newHandle);
+            page.references[index] = isScoped ? 1 : 0;
+            page.owners.set(index, isScoped ? scope : PINNED);
+            page.objects.set(index, object);
+            stripe.handles.put(object, newHandle);
+            return newHandle;
+        }
+    }
+
+    /**
+     * Extend the lifetime of an existing handle to cover the given scope. Must be called with the stripe lock held.
+     */
+    private void touch(long handle, Scope scope) {
+        final var index = (int) (handle & PAGE_MASK);
+        final var page = existingPage(handle);
+        final var owner = page.owners.get(index);
+        if (owner == PINNED || owner == scope) {
+            return;
+        }
+
+        if (scope == PINNED || !scope.add(handle)) {
+            page.owners.set(index, PINNED);
+            return;
+        }
+
+        page.references[index]++;
+        page.owners.set(index, scope);
+        waitFor(scope, owner);
+    }
+
+    @SuppressWarnings("unchecked")
+    <T> T get(long handle) {
+        if (handle == NULL_HANDLE) {
+            return null;
+        }
+
+        return (T) existingPage(handle).objects.get((int) (handle & PAGE_MASK));
+    }
+
+    /**
+     * The scope to register objects requested through the handle in, or {@code null} for {@link ObjectHandleTable#NULL_HANDLE}.
+     */
+    Scope scopeOf(long handle) {
+        if (handle == NULL_HANDLE) {
+            return null;
+        }
+
+        final var owner = existingPage(handle).owners.get((int) (handle & PAGE_MASK));
+        return owner == null ? PINNED : owner;
+    }
+
+    /**
+     * The scope to register objects requested through handles of both scopes in. {@code null} stands for "no constraint".
+     */
+    Scope join(Scope left, Scope right) {
+        if (left == null || left == right) {
+            return right;
+        }
+        if (right == null) {
+            return left;
+        }
+        if (left == PINNED || right == PINNED) {
+            return PINNED;
+        }
+
+        final var later = left.epoch >= right.epoch ? left : right;
+        waitFor(later, later == left ? right : left);
+        return later;
+    }
+
+    Scope openScope() {
+        final var scope = new Scope(lastEpoch.incrementAndGet());
+        if (staleScopeNanos > 0) {
+            synchronized (scopeLock) {
+                activeScopes.add(scope);
+            }
+            pinStaleScopes();
+        }
+        return scope;
+    }
+
+    /**
+     * Hand the scope over to native code. The scope is retired, when native code releases the {@code rootHandle}.
+     */
+    void publish(Scope scope, long rootHandle) {
+        if (scope == PINNED) {
+            return;
+        }
+
+        if (rootHandle == NULL_HANDLE) {
+            retire(scope);
+            return;
+        }
+
+        publishedScopes.compute(rootHandle, (_, head) -> {
+            scope.nextWithSameRoot = head;
+            return scope;
+        });
+    }
+
+    void release(long rootHandle) {
+        final var released = new Scope[1];
+        publishedScopes.computeIfPresent(rootHandle, (_, head) -> {
+            released[0] = head;
+            return head.nextWithSameRoot;
+        });
+
+        if (released[0] != null) {
+            retire(released[0]);
+        }
+    }
+
+    /**
+     * Objects registered in {@code scope} might be requested by native code on behalf of {@code other},
+     * so {@code scope} isn't reclaimed until {@code other} and the scopes it waits for are retired.
+     */
+    private void waitFor(Scope scope, Scope other) {
+        synchronized (scopeLock) {
+            if (other.isRetired) {
+                return;
+            }
+
+            block(scope, other);
+            for (final var blocker : other.blockedBy) {
+                block(scope, blocker);
+            }
+        }
+    }
+
+    private static void block(Scope scope, Scope blocker) {
+        if (blocker != scope && !scope.blockedBy.contains(blocker)) {
+            scope.blockedBy.add(blocker);
+            blocker.waiters.add(scope);
+        }
+    }
+
+    /**
+     * The scope is no longer used by native code. Its handles are released as soon as the scopes it waits for are retired too.
+     */
+    private void retire(Scope scope) {
+        final var reclaimed = new ArrayList<long[]>();
+        synchronized (scopeLock) {
+            if (scope.isRetired) {
+                return;
+            }
+
+            scope.isRetired = true;
+            activeScopes.remove(scope);
+            if (scope.blockedBy.isEmpty()) {
+                reclaimed.add(scope.close());
+            }
+            for (final var waiter : scope.waiters) {
+                waiter.blockedBy.remove(scope);
+                if (waiter.isRetired && waiter.blockedBy.isEmpty()) {
+                    reclaimed.add(waiter.close());
+                }
+            }
+            scope.waiters.clear();
+        }
+
+        for (final var handles : reclaimed) {
+            for (final var handle : handles) {
+                dereference(handle);
+            }
+        }
+    }
+
+    private void pinStaleScopes() {
+        final var staleScopes = new ArrayDeque<Scope>();
+        final var now = System.nanoTime();
+        synchronized (scopeLock) {
+            final var iterator = activeScopes.iterator();
+            while (iterator.hasNext()) {
+                final var scope = iterator.next();
+                if (now - scope.openedAt < staleScopeNanos) {
+                    break;
+                }
+
+                iterator.remove();
+                staleScopes.add(scope);
+            }
+        }
+
+        for (final var scope : staleScopes) {
+            System.err.println("Object scope " + scope.epoch + " was not released by native code in "
+                               + Duration.ofNanos(now - scope.openedAt).toMillis() + " ms, pinning its handles.");
+            // Handles requested in this scope from now on are pinned right away, see Scope.add.
+            for (final var handle : scope.close()) {
+                pin(handle);
+            }
+            retire(scope);
+        }
+    }
+
+    private void pin(long handle) {
+        final var index = (int) (handle & PAGE_MASK);
+        final var page = existingPage(handle);
+        final var object = page.objects.get(index);
+        if (object == null) {
+            return;
+        }
+
+        synchronized (stripe(object)) {
+            if (page.objects.get(index) == object) {
+                page.owners.set(index, PINNED);
+            }
+        }
+    }
+
+    /**
+     * Drop the reference of a reclaimed scope, free the handle if it was the last one.
+     */
+    private void dereference(long handle) {
+        final var index = (int) (handle & PAGE_MASK);
+        final var page = existingPage(handle);
+        final var object = page.objects.get(index);
+        if (object == null) {
+            return;
+        }
+
+        final var stripe = stripe(object);
+        synchronized (stripe) {
+            if (page.objects.get(index) != object || --page.references[index] > 0 || page.owners.get(index) == PINNED) {
+                return;
+            }
+
+            page.objects.set(index, null);
+            page.owners.set(index, null);
+            stripe.handles.remove(object);
+            if (stripe.freeCount == stripe.free.length) {
+                stripe.free = Arrays.copyOf(stripe.free, Math.max(stripe.free.length * 2, 16));
+            }
+            stripe.free[stripe.freeCount++] = handle;
+        }
+    }
+
+    private Page existingPage(long handle) {
+        final var root = this.root;
+        if (!root.covers(handle)) {
+            throw new IndexOutOfBoundsException("Unknown object handle " + handle);
+        }
+
+        var node = root.node;
+        for (var height = root.height; height > 0 && node != null; height--) {
+            node = ((Directory) node).children.get(Directory.index(handle, height));
+        }
+
+        if (node == null) {
+            throw new IndexOutOfBoundsException("Unknown object handle " + handle);
+        }
+
+        return (Page) node;
+    }
+
+    private Page page(long handle) {
+        final var root = this.root;
+        if (root.covers(handle)) {
+            var node = root.node;
+            for (var height = root.height; height > 0 && node != null; height--) {
+                node = ((Directory) node).children.get(Directory.index(handle, height));
+            }
+
+            if (node != null) {
+                return (Page) node;
+            }
+        }
+
+        synchronized (pageLock) {
+            var current = this.root;
+            while (!current.covers(handle)) {
+                // The old root becomes the first child of the new one, nothing is copied.
+                final var directory = new Directory();
+                directory.children.set(0, current.node);
+                current = new Root(directory, current.height + 1);
+            }
+            this.root = current;
+
+            var node = current.node;
+            for (var height = current.height; height > 0; height--) {
+                final var children = ((Directory) node).children;
+                final var index = Directory.index(handle, height);
+                var child = children.get(index);
+                if (child == null) {
+                    child = height == 1 ? new Page() : new Directory();
+                    children.set(index, child);
+                }
+                node = child;
+            }
+
+            return (Page) node;
+        }
+    }
+
+    /**
+     * Lifetime of the handles used while serving a single request from native code.
+     */
+    static final class Scope {
+        private static final long[] EMPTY_HANDLES = new long[0];
+
+        final long epoch;
+        private final long openedAt = System.nanoTime();
+        private long[] handles = EMPTY_HANDLES;
+        private int size;
+        private boolean isClosed;
+        private boolean isRetired;
+        private final ArrayList<Scope> blockedBy = new ArrayList<>(0);
+        private final ArrayList<Scope> waiters = new ArrayList<>(0);
+        private Scope nextWithSameRoot;
+        private SyntaxNodeMetrics nodeMetrics;
+
+        private Scope(long epoch) {
+            this.epoch = epoch;
+        }
+
+        /**
+         * Syntax node metrics memoized across all requests serving the objects of this scope.
+         * Dropped when the scope is closed. Calls in closed or {@link ObjectHandleTable#PINNED pinned} scopes only memoize
+         * for themselves: pinned objects are never released, so the metrics would keep their trees reachable forever.
+         */
+        synchronized SyntaxNodeMetrics nodeMetrics() {
+            if (isClosed || this == PINNED) {
+                return new SyntaxNodeMetrics();
+            }
+            if (nodeMetrics == null) {
+                nodeMetrics = new SyntaxNodeMetrics();
+            }
+            return nodeMetrics;
+        }
+
+        /**
+         * @return {@code false} if the scope is already reclaimed or abandoned, and the handle has to be pinned instead
+         */
+        private synchronized boolean add(long handle) {
+            if (isClosed) {
+                return false;
+            }
+
+            if (size == handles.length) {
+                handles = Arrays.copyOf(handles, Math.max(handles.length * 2, 16));
+            }
+            handles[size++] = handle;
+            return true;
+        }
+
+        /**
+         * Stop accepting handles, and take the ones added so far.
+         */
+        private synchronized long[] close() {
+            isClosed = true;
+            nodeMetrics = null;
+            final var result = Arrays.copyOf(handles, size);
+            handles = EMPTY_HANDLES;
+            size = 0;
+            return result;
+        }
+    }
+
+    private static final class Stripe {
+        final IdentityHashMap<Object, Long> handles = new IdentityHashMap<>();
+        long[] free = new long[0];
+        int freeCount;
+    }
+
+    private record Root(Object node, int height) {
+        boolean covers(long handle) {
+            final var bits = PAGE_BITS + DIRECTORY_BITS * height;
+            return handle >= 0 && (bits >= Long.SIZE - 1 || handle >>> bits == 0);
+        }
+    }
+
+    private static final class Directory {
+        final AtomicReferenceArray<Object> children = new AtomicReferenceArray<>(DIRECTORY_SIZE);
+
+        static int index(long handle, int height) {
+            return (int) ((handle >>> (PAGE_BITS + DIRECTORY_BITS * (height - 1))) & DIRECTORY_MASK);
+        }
+    }
+
+    private static final class Page {
+        final AtomicReferenceArray<Object> objects = new AtomicReferenceArray<>(PAGE_SIZE);
+        /**
+         * The latest scope that used the handle, or {@link ObjectHandleTable#PINNED}.
+         */
+        final AtomicReferenceArray<Scope> owners = new AtomicReferenceArray<>(PAGE_SIZE);
+        /**
+         * Number of scopes using the handle, guarded by the stripe lock of the object.
+         */
+        final int[] references = new int[PAGE_SIZE];
+    }
+}
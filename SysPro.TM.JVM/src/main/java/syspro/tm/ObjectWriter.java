@@ -0,0 +1,138 @@
+package syspro.tm;
+
+import java.lang.foreign.MemoryLayout;
+import java.lang.foreign.MemorySegment;
+import java.lang.foreign.ValueLayout;
+import java.util.List;
+import java.util.Objects;
+
+/**
+ * Serialization context, passed explicitly to {@link ObjectDescriptor#serialize(Object, ObjectWriter)}.
+ * Writes struct members of one object at a time, the same writer is moved along a flat array of objects.
+ */
+final class ObjectWriter {
+    private final LibraryCall call;
+    private final MemorySegment segment;
+    private long base;
+
+    ObjectWriter(LibraryCall call, MemorySegment segment) {
+        assert call != null && segment != null;
+        this.call = call;
+        this.segment = segment;
+    }
+
+    /**
+     * Position the writer at the start of the next object in the segment.
+     */
+    void moveTo(long base) {
+        this.base = base;
+    }
+
+    /**
+     * Allocate a native array that lives as long as the serialized objects.
+     */
+    MemorySegment allocate(MemoryLayout elementLayout, long count) {
+        return call.allocator.allocate(elementLayout, count);
+    }
+
+    /**
+     * Allocate a native buffer that lives as long as the serialized objects, e.g. for several arrays laid out together.
+     */
+    MemorySegment allocate(long byteSize, long byteAlignment) {
+        return call.allocator.allocate(byteSize, byteAlignment);
+    }
+
+    SyntaxNodeMetrics nodeMetrics() {
+        return call.nodeMetrics();
+    }
+
+    /**
+     * A writer for objects stored in a nested array, e.g. one allocated via {@link ObjectWriter#allocate(MemoryLayout, long)}.
+     */
+    ObjectWriter writerFor(MemorySegment segment) {
+        return new ObjectWriter(call, segment);
+    }
+
+    /**
+     * Write a flags field with only bit 0 defined.
+     */
+    void set(ObjectDescriptor.Field field, boolean flag) {
+        set(field, flag ? 1 : 0);
+    }
+
+    /**
+     * Write a flags field, {@code flag0} is bit 0. Fixed arity, so that no varargs array is allocated per object.
+     */
+    void set(ObjectDescriptor.Field field, boolean flag0, boolean flag1, boolean flag2, boolean flag3) {
+        set(field, (flag0 ? 1 : 0) | (flag1 ? 1 << 1 : 0) | (flag2 ? 1 << 2 : 0) | (flag3 ? 1 << 3 : 0));
+    }
+
+    void set(ObjectDescriptor.Field field, int value) {
+        segment.set((ValueLayout.OfInt) field.layout, base + field.offset, value);
+    }
+
+    void set(ObjectDescriptor.Field field, long value) {
+        segment.set((ValueLayout.OfLong) field.layout, base + field.offset, value);
+    }
+
+    void set(ObjectDescriptor.Field field, Enum<?> value) {
+        assert Objects.equals(field.layout.withoutName(), ValueLayout.JAVA_INT) : field;
+        assert value != null : field.name;
+        set(field, value.ordinal());
+    }
+
+    void set(ObjectDescriptor.Field field, String value) {
+        assert Objects.equals(field.layout.withoutName(), NativeAbi.STRING_LAYOUT) : field;
+        segment.set(NativeAbi.STRING_LAYOUT, base + field.offset, call.serializeString(value));
+    }
+
+    void set(ObjectDescriptor.Field field, MemorySegment address) {
+        assert Objects.equals(field.layout.withoutName(), NativeAbi.VMT_STUB_LAYOUT) : field;
+        segment.set(NativeAbi.VMT_STUB_LAYOUT, base + field.offset, address);
+    }
+
+    void setArray(ObjectDescriptor.Field field, List<?> items) {
+        final var offset = field.offset;
+        assert Objects.equals(field.layout.withoutName(), ValueLayout.ADDRESS) : field;
+
+        if (items == null) {
+            segment.set(ValueLayout.ADDRESS, base + offset, MemorySegment.NULL);
+            return;
+        }
+
+        final var size = items.size();
+        final var array = call.allocator.allocate(NativeAbi.JVM_HANDLE_LAYOUT, size);
+        for (var i = 0; i < size; i++) {
+            array.setAtIndex(NativeAbi.JVM_HANDLE_LAYOUT, i, call.toObjectHandle(items.get(i)));
+        }
+        segment.set(ValueLayout.ADDRESS, base + offset, array);
+    }
+
+    void set(ObjectDescriptor.Field field, Object value) {
+        final var offset = field.offset;
+        assert Objects.equals(field.layout.withoutName(), NativeAbi.JVM_HANDLE_LAYOUT) : field;
+
+        if (value == null) {
+            segment.set(NativeAbi.JVM_HANDLE_LAYOUT, base + offset, ObjectHandleTable.NULL_HANDLE);
+            return;
+        }
+
+        if (value instanceof String || value instanceof MemorySegment || value instanceof Enum<?>) {
+            throw new RuntimeException("Wrong overload");
+        }
+
+        final var type = value.getClass();
+        if (NativeAbi.layoutKind(type) < 0) {
+            throw new RuntimeException("Unsupported type " + type);
+        }
+
+        segment.set(NativeAbi.JVM_HANDLE_LAYOUT, base + offset, call.toObjectHandle(value));
+    }
+
+    void setNull(ObjectDescriptor.Field field) {
+        final var offset = field.offset;
+        assert Objects.equals(field.layout.withoutName(), NativeAbi.JVM_HANDLE_LAYOUT) : field;
+
+        segment.set(NativeAbi.JVM_HANDLE_LAYOUT, base + offset, ObjectHandleTable.NULL_HANDLE);
+    }
+}
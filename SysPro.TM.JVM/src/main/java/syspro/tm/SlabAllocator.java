@@ -0,0 +1,84 @@
+package syspro.tm;
+
+import java.lang.foreign.Arena;
+import java.lang.foreign.MemorySegment;
+import java.lang.foreign.SegmentAllocator;
+import java.util.ArrayList;
+
+/**
+ * Per-thread bump allocator for {@link LibraryCall} buffers.
+ * <p>
+ * Memory is carved out of large chunks that are reused from call to call, instead of creating an {@link Arena} per call.
+ * Calls nest (native code calls back into Java while a Java-initiated call is still running), so every call
+ * remembers a {@link SlabAllocator#mark() mark} and rewinds to it when done, leaving outer calls' buffers intact.
+ * <p>
+ * Like {@link Arena#allocate(long, long)}, returned memory is zero-initialized: descriptors rely on it for the fields
+ * and padding they don't write.
+ */
+final class SlabAllocator implements SegmentAllocator {
+    static final long CHUNK_SIZE = 64 * 1024;
+    private static final long CHUNK_ALIGNMENT = 16;
+    private static final int RETAINED_CHUNK_COUNT = 4;
+    /**
+     * A mark stores the offset in its low bits and the chunk index in the rest: up to 1 TiB per chunk and 8M chunks.
+     */
+    private static final int MARK_OFFSET_BITS = 40;
+    private static final ThreadLocal<SlabAllocator> current = ThreadLocal.withInitial(SlabAllocator::new);
+
+    private final ArrayList<MemorySegment> chunks = new ArrayList<>();
+    private int chunkIndex;
+    private long offset;
+
+    private SlabAllocator() {
+    }
+
+    static SlabAllocator current() {
+        return current.get();
+    }
+
+    long mark() {
+        if (offset >>> MARK_OFFSET_BITS != 0 || chunkIndex >>> (Long.SIZE - 1 - MARK_OFFSET_BITS) != 0) {
+            throw new IllegalStateException("Can't mark offset " + offset + " in chunk " + chunkIndex);
+        }
+        return (long) chunkIndex << MARK_OFFSET_BITS | offset;
+    }
+
+    void reset(long mark) {
+        chunkIndex = (int) (mark >>> MARK_OFFSET_BITS);
+        offset = mark & ((1L << MARK_OFFSET_BITS) - 1);
+
+        // Chunks past the mark are unused now. Let the GC free the ones only needed for an unusually large call,
+        // so that at most RETAINED_CHUNK_COUNT * CHUNK_SIZE bytes stay with the thread, however large its calls were.
+        final var firstUnused = offset == 0 ? chunkIndex : chunkIndex + 1;
+        for (var i = chunks.size() - 1; i >= firstUnused; i--) {
+            if (i >= RETAINED_CHUNK_COUNT || chunks.get(i).byteSize() > CHUNK_SIZE) {
+                chunks.remove(i);
+            }
+        }
+    }
+
+    @Override
+    public MemorySegment allocate(long byteSize, long byteAlignment) {
+        if (byteSize < 0 || byteAlignment <= 0 || (byteAlignment & (byteAlignment - 1)) != 0) {
+            throw new IllegalArgumentException("Invalid allocation size " + byteSize + " or alignment " + byteAlignment);
+        }
+
+        while (chunkIndex < chunks.size()) {
+            final var chunk = chunks.get(chunkIndex);
+            final var address = chunk.address();
+            final var start = ((address + offset + byteAlignment - 1) & -byteAlignment) - address;
+            if (start + byteSize <= chunk.byteSize()) {
+                offset = start + byteSize;
+                return chunk.asSlice(start, byteSize).fill((byte) 0);
+            }
+
+            chunkIndex++;
+            offset = 0;
+        }
+
+        final var chunkSize = Math.max(CHUNK_SIZE, byteSize + Math.max(byteAlignment - CHUNK_ALIGNMENT, 0));
+        // Every chunk has its own automatic arena, so that trimmed chunks are actually freed.
+        chunks.add(Arena.ofAuto().allocate(chunkSize, CHUNK_ALIGNMENT));
+        return allocate(byteSize, byteAlignment);
+    }
+}
@@ -0,0 +1,164 @@
+package syspro.tm;
+
+import syspro.tm.lexer.Token;
+import syspro.tm.parser.SyntaxNode;
+
+import java.util.ArrayDeque;
+import java.util.IdentityHashMap;
+
+/**
+ * Memoized {@link SyntaxNode#position()}, {@link SyntaxNode#fullLength()}, {@link SyntaxNode#leadingTriviaLength()}
+ * and {@link SyntaxNode#trailingTriviaLength()} of serialized nodes. One instance is shared by all the calls serving
+ * a single request (its {@link ObjectHandleTable.Scope}, or just the call for pinned objects), since native code fetches a tree one level per call.
+ * <p>
+ * The default implementations find the first and the last terminal by walking the subtree of every node,
+ * so calling them for every node of a tree is quadratic. Instead, a single post-order pass over the subtree
+ * finds the boundary tokens of every node in it, and all four values are derived from those.
+ * <p>
+ * The pass mirrors the default implementations exactly, so it is only used for nodes that don't override any of them.
+ * Malformed subtrees (with loops or shared nodes) are not memoized, the node methods are called as usual.
+ */
+final class SyntaxNodeMetrics {
+    private static final ClassValue<Boolean> usesDefaults = new ClassValue<>() {
+        @Override
+        protected Boolean computeValue(Class<?> type) {
+            try {
+                return isDefault(type, "position")
+                       && isDefault(type, "fullLength")
+                       && isDefault(type, "leadingTriviaLength")
+                       && isDefault(type, "trailingTriviaLength")
+                       && isDefault(type, "firstTerminal")
+                       && isDefault(type, "lastTerminal")
+                       && isDefault(type, "descendants", boolean.class);
+            } catch (NoSuchMethodException e) {
+                throw new RuntimeException(e);
+            }
+        }
+
+        private static boolean isDefault(Class<?> type, String name, Class<?>... parameterTypes) throws NoSuchMethodException {
+            return type.getMethod(name, parameterTypes).getDeclaringClass() == SyntaxNode.class;
+        }
+    };
+
+    private final IdentityHashMap<SyntaxNode, Terminals> terminals = new IdentityHashMap<>();
+
+    /**
+     * Boundary tokens of the node, or {@code null} if the memoized values can't be used for it.
+     */
+    synchronized Terminals terminals(SyntaxNode node) {
+        if (!usesDefaults.get(node.getClass())) {
+            return null;
+        }
+
+        var result = terminals.get(node);
+        if (result == null) {
+            computeSubtree(node);
+            result = terminals.get(node);
+        }
+
+        return result != null && result.first != null && result.last != null ? result : null;
+    }
+
+    synchronized int size() {
+        return terminals.size();
+    }
+
+    private void computeSubtree(SyntaxNode root) {
+        final var results = new IdentityHashMap<SyntaxNode, Terminals>();
+        final var stack = new ArrayDeque<Frame>();
+        stack.push(new Frame(root));
+        results.put(root, null);
+
+        try {
+            while (!stack.isEmpty()) {
+                final var frame = stack.peek();
+                if (frame.nextSlot < frame.slotCount) {
+                    final var child = frame.node.slot(frame.nextSlot++);
+                    if (child == null) {
+                        continue;
+                    }
+
+                    if (results.containsKey(child)) {
+                        // The same node is reachable twice: default implementations deduplicate such nodes,
+                        // which doesn't map onto a bottom-up pass. Memoized subtrees are walked again to detect this,
+                        // native code requests trees top-down anyway.
+                        return;
+                    }
+
+                    results.put(child, null);
+                    stack.push(new Frame(child));
+                    continue;
+                }
+
+                stack.pop();
+                final var result = frame.finish();
+                results.put(frame.node, result);
+                final var parent = stack.peek();
+                if (parent != null) {
+                    parent.accept(result);
+                }
+            }
+        } catch (Throwable e) {
+            // Let the node methods report the failure.
+            return;
+        }
+
+        terminals.putAll(results);
+    }
+
+    /**
+     * @param first          token of {@link SyntaxNode#firstTerminal()}
+     * @param last           token of {@link SyntaxNode#lastTerminal()}
+     * @param lastDescendant token of the last terminal in pre-order traversal of the subtree, including the node itself
+     */
+    record Terminals(Token first, Token last, Token lastDescendant) {
+        int position() {
+            return first.start;
+        }
+
+        int fullLength() {
+            return last.end - first.start + 1;
+        }
+
+        int leadingTriviaLength() {
+            return first.leadingTriviaLength;
+        }
+
+        int trailingTriviaLength() {
+            return last.trailingTriviaLength;
+        }
+    }
+
+    private static final class Frame {
+        final SyntaxNode node;
+        final int slotCount;
+        final Token token;
+        int nextSlot;
+        Token first;
+        Token lastDescendant;
+
+        Frame(SyntaxNode node) {
+            this.node = node;
+            this.slotCount = node.slotCount();
+            this.token = node.isTerminal() ? node.token() : null;
+            this.first = token;
+            if (token == null && node.isTerminal()) {
+                throw new IllegalStateException("Terminal node without a token");
+            }
+        }
+
+        void accept(Terminals child) {
+            if (first == null) {
+                first = child.first;
+            }
+            if (child.lastDescendant != null) {
+                lastDescendant = child.lastDescendant;
+            }
+        }
+
+        Terminals finish() {
+            final var lastDescendant = this.lastDescendant != null ? this.lastDescendant : token;
+            return new Terminals(first, token != null ? token : lastDescendant, lastDescendant);
+        }
+    }
+}
@@ -4,4 +4,26 @@ import java.util.List;
 
 public interface Lexer {
     List<Token> lex(String code);
+
+    /**
+     * Called by the test harness instead of {@link Lexer#lex(String)}.
+     * Override to read the source code directly from native memory without copying it into a {@link String}.
+     * The sequence must not be used after this method returns, nor on other threads: share {@code code.toString()} instead.
+     */
+    default List<Token> lex(CharSequence code) {
+        return lex(code.toString());
+    }
+
+    /**
+     * Lex {@code code} again after {@code change} was applied to the source text, which produced {@code previousTokens}.
+     * The result must be the same as {@code lex(code)}, only the tokens around the change have to be lexed again.
+     * <p>
+     * The default implementation lexes a window of whole lines around the change with {@link Lexer#lex(String)},
+     * growing it until the window tokens (and the indentation state) line up with the previous tokens, which are then
+     * reused with shifted offsets. It relies on the lexer being deterministic, and on a non-indented line
+     * always starting with an empty indentation stack.
+     */
+    default List<Token> relex(String code, List<Token> previousTokens, TextChange change) {
+        return Relexer.relex(this, code, previousTokens, change);
+    }
 }
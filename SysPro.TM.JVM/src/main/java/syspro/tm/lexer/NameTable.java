@@ -0,0 +1,132 @@
+package syspro.tm.lexer;
+
+import java.util.Objects;
+
+/**
+ * Per-compilation table of canonical identifier and string literal values: equal values interned into the same table
+ * are the same {@link String} instance, so they are stored once and can be compared by reference.
+ * <p>
+ * The table is split into independently locked segments. Lookups of existing values don't lock and don't allocate,
+ * only adding a new value locks its segment. Values are never removed, drop the whole table instead.
+ *
+ * @see ReferenceLexer#withNames(NameTable)
+ */
+public final class NameTable {
+    private static final int SEGMENT_BITS = 4;
+    private static final int INITIAL_SEGMENT_CAPACITY = 64;
+
+    private final Segment[] segments = new Segment[1 << SEGMENT_BITS];
+
+    public NameTable() {
+        for (var i = 0; i < segments.length; i++) {
+            segments[i] = new Segment();
+        }
+    }
+
+    public String intern(String value) {
+        return intern(value, 0, value.length());
+    }
+
+    /**
+     * @return canonical instance of {@code text.subSequence(start, end).toString()}
+     */
+    public String intern(CharSequence text, int start, int end) {
+        Objects.checkFromToIndex(start, end, text.length());
+        // Same as String.hashCode(), so that the hash of the canonical instance is cached by the String itself.
+        var hash = 0;
+        for (var i = start; i < end; i++) {
+            hash = 31 * hash + text.charAt(i);
+        }
+        final var spread = hash ^ hash >>> 16;
+        final var segment = segments[spread >>> Integer.SIZE - SEGMENT_BITS];
+        final var existing = Segment.find(segment.entries, text, start, end, hash, spread);
+        return existing != null ? existing : segment.add(text, start, end, hash, spread);
+    }
+
+    /**
+     * @return the number of distinct values
+     */
+    public int size() {
+        var size = 0;
+        for (final var segment : segments) {
+            synchronized (segment) {
+                size += segment.size;
+            }
+        }
+        return size;
+    }
+
+    private static final class Segment {
+        /**
+         * Open addressing with linear probing. Entries are only ever added to a published array,
+         * readers might miss a value added concurrently, and then look again under the lock.
+         * Strings are immutable, so they are safely published even without a happens-before edge.
+         */
+        private volatile String[] entries = new String[INITIAL_SEGMENT_CAPACITY];
+        private int size;
+
+        static String find(String[] entries, CharSequence text, int start, int end, int hash, int spread) {
+            final var mask = entries.length - 1;
+            for (var index = spread & mask; ; index = index + 1 & mask) {
+                final var entry = entries[index];
+                if (entry == null) {
+                    return null;
+                }
+                if (entry.hashCode() == hash && contentEquals(entry, text, start, end)) {
+                    return entry;
+                }
+            }
+        }
+
+        synchronized String add(CharSequence text, int start, int end, int hash, int spread) {
+            var entries = this.entries;
+            final var existing = find(entries, text, start, end, hash, spread);
+            if (existing != null) {
+                return existing;
+            }
+
+            final var value = text.subSequence(start, end).toString();
+            if ((size + 1) * 4 > entries.length * 3) {
+                entries = resize(entries);
+                insert(entries, value, spread);
+                this.entries = entries;
+            } else {
+                insert(entries, value, spread);
+            }
+            size++;
+            return value;
+        }
+
+        private static String[] resize(String[] entries) {
+            final var resized = new String[entries.length * 2];
+            for (final var entry : entries) {
+                if (entry != null) {
+                    final var hash = entry.hashCode();
+                    insert(resized, entry, hash ^ hash >>> 16);
+                }
+            }
+            return resized;
+        }
+
+        private static void insert(String[] entries, String value, int spread) {
+            final var mask = entries.length - 1;
+            var index = spread & mask;
+            while (entries[index] != null) {
+                index = index + 1 & mask;
+            }
+            entries[index] = value;
+        }
+
+        private static boolean contentEquals(String entry, CharSequence text, int start, int end) {
+            if (entry.length() != end - start) {
+                return false;
+            }
+            for (var i = start; i < end; i++) {
+                if (entry.charAt(i - start) != text.charAt(i)) {
+                    return false;
+                }
+            }
+            return true;
+        }
+    }
+}
@@ -0,0 +1,155 @@
+package syspro.tm.lexer;
+
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * {@link ReferenceLexer#lexParallel(CharSequence, ForkJoinPool)} implementation.
+ * <p>
+ * The text is split into chunks at line starts, so no token crosses a chunk edge, and the chunks are lexed in parallel.
+ * Indentation depends on all the lines before, so chunks only record the indentation of their lines,
+ * and {@link IndentationToken}s are added sequentially while the chunks are stitched together.
+ * Trivia at the end of a chunk (e.g. blank lines) become a part of the leading trivia of the next chunk's first token,
+ * the same way the sequential lexer would attach them.
+ */
+final class ParallelLexing {
+    private static final int MIN_CHUNK_LENGTH = 1 << 16;
+    private static final int CHUNKS_PER_THREAD = 4;
+
+    private ParallelLexing() {
+    }
+
+    private record Chunk(ReferenceLexer.Scanner scanner, TokenBuffer tokens) {
+    }
+
+    static TokenBuffer lex(CharSequence code, boolean vectorized, NameTable names, ForkJoinPool pool) {
+        final var length = code.length();
+        final var parallelism = pool.getParallelism();
+        final var chunkCount = parallelism > 1 ? Math.min(parallelism * CHUNKS_PER_THREAD, length / MIN_CHUNK_LENGTH) : 1;
+        final var boundaries = boundaries(code, chunkCount);
+        if (boundaries.length == 2) {
+            // Not worth stitching.
+            final var tokens = new TokenBuffer(Math.max(16, length / 8));
+            final var scanner = new ReferenceLexer.Scanner(code, 0, length, vectorized, names);
+            while (scanner.next(tokens)) {
+                // Keep scanning.
+            }
+            return tokens;
+        }
+
+        final var chunks = new Chunk[boundaries.length - 1];
+        pool.invoke(new LexChunks(code, vectorized, names, boundaries, chunks, 0, chunks.length));
+        return stitch(chunks, length);
+    }
+
+    /**
+     * @return chunk starts, followed by the text length
+     */
+    private static int[] boundaries(CharSequence code, int chunkCount) {
+        final var length = code.length();
+        final var boundaries = new int[Math.max(chunkCount, 1) + 1];
+        var count = 1;
+        for (var i = 1; i < chunkCount; i++) {
+            final var target = (int) ((long) length * i / chunkCount);
+            final var boundary = nextLineStart(code, Math.max(target, boundaries[count - 1]));
+            if (boundary < length && boundary > boundaries[count - 1]) {
+                boundaries[count++] = boundary;
+            }
+        }
+        boundaries[count++] = length;
+        return Arrays.copyOf(boundaries, count);
+    }
+
+    private static int nextLineStart(CharSequence code, int from) {
+        final var length = code.length();
+        for (var i = from; i < length; i++) {
+            final var c = code.charAt(i);
+            if (c == '\n') {
+                return i + 1;
+            }
+            if (c == '\r') {
+                return i + 1 < length && code.charAt(i + 1) == '\n' ? i + 2 : i + 1;
+            }
+        }
+        return length;
+    }
+
+    private static void lexChunk(CharSequence code, boolean vectorized, NameTable names, int[] boundaries, Chunk[] chunks, int index) {
+        // Decoding cursor of a UTF-8 view is not thread-safe.
+        final var text = code instanceof Utf8SourceText utf8 ? utf8.duplicate() : code;
+        final var start = boundaries[index];
+        final var end = boundaries[index + 1];
+        final var scanner = new ReferenceLexer.Scanner(text, start, end, vectorized, names);
+        scanner.deferIndentation();
+        final var tokens = new TokenBuffer(Math.max(16, (end - start) / 8));
+        while (scanner.next(tokens)) {
+            // Keep scanning.
+        }
+        chunks[index] = new Chunk(scanner, tokens);
+    }
+
+    private static TokenBuffer stitch(Chunk[] chunks, int length) {
+        var capacity = 0;
+        for (final var chunk : chunks) {
+            capacity += chunk.tokens.size() + chunk.scanner.lineCount();
+        }
+
+        final var result = new TokenBuffer(Math.max(16, capacity));
+        final var indentation = new ReferenceLexer.Indentation();
+        var coveredEnd = 0;
+        for (final var chunk : chunks) {
+            final var tokens = chunk.tokens;
+            if (tokens.isEmpty()) {
+                continue;
+            }
+
+            tokens.extendLeadingTrivia(0, coveredEnd);
+            final var scanner = chunk.scanner;
+            var from = 0;
+            for (var line = 0; line < scanner.lineCount(); line++) {
+                final var token = scanner.lineToken(line);
+                result.addRange(tokens, from, token);
+                indentation.indent(result, tokens.start(token), scanner.lineWidth(line));
+                from = token;
+            }
+            result.addRange(tokens, from, tokens.size());
+            coveredEnd = tokens.end(tokens.size() - 1) + 1;
+        }
+
+        indentation.dedentAll(result, length);
+        return result;
+    }
+
+    private static final class LexChunks extends RecursiveAction {
+        private final CharSequence code;
+        private final boolean vectorized;
+        private final NameTable names;
+        private final int[] boundaries;
+        private final Chunk[] chunks;
+        private final int from;
+        private final int to;
+
+        LexChunks(CharSequence code, boolean vectorized, NameTable names, int[] boundaries, Chunk[] chunks, int from, int to) {
+            this.code = code;
+            this.vectorized = vectorized;
+            this.names = names;
+            this.boundaries = boundaries;
+            this.chunks = chunks;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from == 1) {
+                lexChunk(code, vectorized, names, boundaries, chunks, from);
+                return;
+            }
+
+            final var middle = (from + to) >>> 1;
+            invokeAll(new LexChunks(code, vectorized, names, boundaries, chunks, from, middle),
+                    new LexChunks(code, vectorized, names, boundaries, chunks, middle, to));
+        }
+    }
+}
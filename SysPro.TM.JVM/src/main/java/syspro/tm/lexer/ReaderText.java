@@ -0,0 +1,105 @@
+package syspro.tm.lexer;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.io.UncheckedIOException;
+import java.util.Arrays;
+
+/**
+ * Sliding window over the text read from a {@link Reader}, indexed by positions in the whole text.
+ * Only the text after the {@link ReaderText#discardBefore(int)} position is kept in memory, and it is read on demand.
+ * {@link ReaderText#length()} is the length of the text read so far.
+ */
+final class ReaderText implements CharSequence {
+    private static final int MIN_READ = 8192;
+
+    private final Reader reader;
+    private char[] buffer = new char[2 * MIN_READ];
+    /**
+     * Position of {@code buffer[0]} in the whole text.
+     */
+    private int offset;
+    private int end;
+    private int discardBefore;
+    private boolean isEndOfText;
+
+    ReaderText(Reader reader) {
+        this.reader = reader;
+    }
+
+    /**
+     * Read until at least {@code minEnd} characters of the text are available, or the text is over.
+     *
+     * @return new {@link ReaderText#length()}
+     */
+    int fill(int minEnd) {
+        while (end < minEnd && !isEndOfText) {
+            read();
+        }
+        // Character.codePointAt() checks for the low surrogate only within length().
+        while (!isEndOfText && end > offset && Character.isHighSurrogate(buffer[end - offset - 1])) {
+            read();
+        }
+        return end;
+    }
+
+    /**
+     * The text before the position won't be accessed anymore.
+     */
+    void discardBefore(int position) {
+        assert position >= discardBefore && position <= end : position;
+        discardBefore = position;
+    }
+
+    private void read() {
+        var used = end - offset;
+        if (buffer.length - used < MIN_READ) {
+            final var discarded = discardBefore - offset;
+            if (discarded > 0) {
+                System.arraycopy(buffer, discarded, buffer, 0, used - discarded);
+                offset = discardBefore;
+                used -= discarded;
+            }
+            if (buffer.length - used < MIN_READ) {
+                buffer = Arrays.copyOf(buffer, Math.max(buffer.length * 2, used + MIN_READ));
+            }
+        }
+
+        final int count;
+        try {
+            count = reader.read(buffer, used, buffer.length - used);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        if (count < 0) {
+            isEndOfText = true;
+        } else {
+            end += count;
+        }
+    }
+
+    @Override
+    public int length() {
+        return end;
+    }
+
+    @Override
+    public char charAt(int index) {
+        assert index >= offset && index < end : index;
+        return buffer[index - offset];
+    }
+
+    @Override
+    public String subSequence(int start, int end) {
+        assert start >= offset && start <= end && end <= this.end : start + ".." + end;
+        return new String(buffer, start - offset, end - start);
+    }
+
+    /**
+     * Only the text still in memory.
+     */
+    @Override
+    public String toString() {
+        return new String(buffer, 0, end - offset);
+    }
+}
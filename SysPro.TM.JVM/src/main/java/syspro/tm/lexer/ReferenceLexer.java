@@ -0,0 +1,831 @@
+package syspro.tm.lexer;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.lang.foreign.Arena;
+import java.lang.foreign.MemorySegment;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * Table-driven SysPro lexer, a baseline to compare other {@link Lexer} implementations against.
+ * <p>
+ * ASCII characters are classified with a lookup table, keywords are recognized with a perfect hash over
+ * the first and the last characters and the length, symbols are matched with a longest-match trie.
+ * Tokens are appended to a {@link TokenBuffer} without allocating {@link Token} objects.
+ * <p>
+ * Conventions:
+ * <ul>
+ *     <li>Trivia are whitespace, {@code #} comments and line terminators ({@code \r\n}, {@code \n} or {@code \r}).
+ *     Trailing trivia extend up to and including the line terminator, everything else before a token is its leading trivia.
+ *     Trivia after the last token don't belong to any token.</li>
+ *     <li>Indentation is the number of whitespace characters before the first token of a line.
+ *     {@link IndentationToken}s are zero-width and placed at the start of that token, including its leading trivia;
+ *     the remaining dedents are placed at the end of the text. Lines without tokens don't affect indentation.</li>
+ *     <li>{@code true} and {@code false} are {@link BooleanLiteralToken}s, contextual keywords are {@link IdentifierToken}s
+ *     with {@link IdentifierToken#contextualKeyword}.</li>
+ *     <li>Integer literals are decimal, {@link BuiltInType#INT64} unless they have one of
+ *     {@code i32}, {@code i64}, {@code u32} or {@code u64} suffixes. Values out of range are {@link BadToken}s.</li>
+ *     <li>Rune and string literals support {@code \0}, {@code \t}, {@code \n}, {@code \r}, {@code \\}, {@code \'},
+ *     {@code \"} and {@code \U+XXXX} (4 to 8 hex digits) escapes, and can't span multiple lines.</li>
+ *     <li>Any other character (or unterminated literal) is a {@link BadToken}.</li>
+ * </ul>
+ */
+public final class ReferenceLexer implements Lexer {
+    private static final boolean IS_VECTOR_API_AVAILABLE = ModuleLayer.boot().findModule("jdk.incubator.vector").isPresent();
+
+    private static final byte OTHER = 0;
+    private static final byte WHITESPACE = 1;
+    private static final byte LINE_TERMINATOR = 2;
+    private static final byte COMMENT = 3;
+    private static final byte LETTER = 4;
+    private static final byte DIGIT = 5;
+    private static final byte SYMBOL = 6;
+    private static final byte QUOTE = 7;
+    private static final byte APOSTROPHE = 8;
+
+    private static final byte[] CHAR_CLASSES = new byte[128];
+
+    private static final int KEYWORD_TABLE_BITS = 6;
+    private static final String[] KEYWORD_TEXTS = new String[1 << KEYWORD_TABLE_BITS];
+    /**
+     * {@code null} for boolean literals.
+     */
+    private static final Keyword[] KEYWORDS = new Keyword[1 << KEYWORD_TABLE_BITS];
+    private static final int KEYWORD_HASH_SEED;
+    private static final int MIN_KEYWORD_LENGTH;
+    private static final int MAX_KEYWORD_LENGTH;
+
+    /**
+     * Symbol trie: {@code SYMBOL_TRANSITIONS[state * 128 + c]} is the next state, 0 if there is none (0 is the root).
+     */
+    private static final int[] SYMBOL_TRANSITIONS;
+    private static final Symbol[] SYMBOL_ACCEPTS;
+
+    static {
+        CHAR_CLASSES[' '] = WHITESPACE;
+        CHAR_CLASSES['\t'] = WHITESPACE;
+        CHAR_CLASSES['\f'] = WHITESPACE;
+        CHAR_CLASSES['\u000B'] = WHITESPACE;
+        CHAR_CLASSES['\n'] = LINE_TERMINATOR;
+        CHAR_CLASSES['\r'] = LINE_TERMINATOR;
+        CHAR_CLASSES['#'] = COMMENT;
+        CHAR_CLASSES['_'] = LETTER;
+        for (var c = 'a'; c <= 'z'; c++) {
+            CHAR_CLASSES[c] = LETTER;
+            CHAR_CLASSES[Character.toUpperCase(c)] = LETTER;
+        }
+        for (var c = '0'; c <= '9'; c++) {
+            CHAR_CLASSES[c] = DIGIT;
+        }
+        CHAR_CLASSES['"'] = QUOTE;
+        CHAR_CLASSES['\''] = APOSTROPHE;
+
+        final var transitions = new ArrayList<int[]>();
+        final var accepts = new ArrayList<Symbol>();
+        transitions.add(new int[128]);
+        accepts.add(null);
+        for (final var symbol : Symbol.values()) {
+            CHAR_CLASSES[symbol.text.charAt(0)] = SYMBOL;
+            var state = 0;
+            for (final var c : symbol.text.toCharArray()) {
+                var next = transitions.get(state)[c];
+                if (next == 0) {
+                    next = transitions.size();
+                    transitions.add(new int[128]);
+                    accepts.add(null);
+                    transitions.get(state)[c] = next;
+                }
+                state = next;
+            }
+            accepts.set(state, symbol);
+        }
+        SYMBOL_TRANSITIONS = new int[transitions.size() * 128];
+        for (var i = 0; i < transitions.size(); i++) {
+            System.arraycopy(transitions.get(i), 0, SYMBOL_TRANSITIONS, i * 128, 128);
+        }
+        SYMBOL_ACCEPTS = accepts.toArray(Symbol[]::new);
+
+        final var words = new ArrayList<String>();
+        for (final var keyword : Keyword.values()) {
+            words.add(keyword.text);
+        }
+        words.add("true");
+        words.add("false");
+        var minLength = Integer.MAX_VALUE;
+        var maxLength = 0;
+        for (final var word : words) {
+            minLength = Math.min(minLength, word.length());
+            maxLength = Math.max(maxLength, word.length());
+        }
+        MIN_KEYWORD_LENGTH = minLength;
+        MAX_KEYWORD_LENGTH = maxLength;
+        KEYWORD_HASH_SEED = findKeywordHashSeed(words);
+        for (final var word : words) {
+            final var slot = keywordHash(word.charAt(0), word.charAt(word.length() - 1), word.length(), KEYWORD_HASH_SEED);
+            KEYWORD_TEXTS[slot] = word;
+            for (final var keyword : Keyword.values()) {
+                if (keyword.text.equals(word)) {
+                    KEYWORDS[slot] = keyword;
+                }
+            }
+        }
+    }
+
+    private final boolean vectorized;
+    private final NameTable names;
+
+    public ReferenceLexer() {
+        this(false, null);
+    }
+
+    private ReferenceLexer(boolean vectorized, NameTable names) {
+        this.vectorized = vectorized;
+        this.names = names;
+    }
+
+    /**
+     * Opt-in lexer that skips whitespace and comments, and scans string literals, many bytes at a time with the Vector API.
+     * Only ASCII {@link Utf8SourceText} input (e.g. {@link ReferenceLexer#lexFile(Path)}) is vectorized, other input is scanned as usual.
+     * If the {@code jdk.incubator.vector} module is not available ({@code --add-modules jdk.incubator.vector}),
+     * the lexer is the same as the default one.
+     */
+    public static ReferenceLexer vectorized() {
+        return new ReferenceLexer(IS_VECTOR_API_AVAILABLE, null);
+    }
+
+    /**
+     * Same lexer that interns identifier and string literal values into the table, e.g. one table per compilation.
+     * Tokens from all the files lexed with the table share the same value instances, which can be compared by reference.
+     * The table is thread-safe, so it can be shared by {@link ReferenceLexer#lexParallel(CharSequence)} and concurrent lexers.
+     */
+    public ReferenceLexer withNames(NameTable names) {
+        return new ReferenceLexer(vectorized, names);
+    }
+
+    public boolean isVectorized() {
+        return vectorized;
+    }
+
+    /**
+     * @return {@code null} if values are not interned
+     */
+    public NameTable names() {
+        return names;
+    }
+
+    @Override
+    public TokenBuffer lex(String code) {
+        return lex((CharSequence) code);
+    }
+
+    @Override
+    public TokenBuffer lex(CharSequence code) {
+        final var tokens = new TokenBuffer(Math.max(16, code.length() / 8));
+        final var scanner = new Scanner(code, 0, code.length(), vectorized, names);
+        while (scanner.next(tokens)) {
+            // Keep scanning.
+        }
+        return tokens;
+    }
+
+    /**
+     * Same as {@link ReferenceLexer#lex(CharSequence)}, but large inputs are split into chunks at line boundaries,
+     * which are lexed in parallel in the common {@link ForkJoinPool}.
+     * The text must be safe to read from multiple threads (e.g. a {@link String}, or a {@link Utf8SourceText}
+     * backed by a shared or global arena).
+     */
+    public TokenBuffer lexParallel(CharSequence code) {
+        return lexParallel(code, ForkJoinPool.commonPool());
+    }
+
+    public TokenBuffer lexParallel(CharSequence code, ForkJoinPool pool) {
+        return ParallelLexing.lex(code, vectorized, names, pool);
+    }
+
+    /**
+     * Lex a UTF-8 file mapped into memory, without reading it into a {@link String}.
+     * Token offsets are in chars, as usual. To map them to byte offsets in the file,
+     * use {@link Utf8SourceText#map(FileChannel, Arena)} and {@link Utf8SourceText#byteOffset(int)} directly.
+     */
+    public TokenBuffer lexFile(Path path) throws IOException {
+        try (final var channel = FileChannel.open(path, StandardOpenOption.READ); final var arena = Arena.ofConfined()) {
+            return lex(Utf8SourceText.map(channel, arena));
+        }
+    }
+
+    /**
+     * Lex lazily, a token at a time, e.g. to overlap lexing with parsing.
+     */
+    public TokenStream stream(CharSequence code) {
+        return new TokenStream(new Scanner(code, 0, code.length(), vectorized, names), null);
+    }
+
+    /**
+     * Lex the text from the reader lazily, a token at a time.
+     * Only the text of the current token (and the lookahead) is kept in memory, so the text size is not limited by the heap.
+     * Token offsets are still {@code int}s, the text must be shorter than 2^31 characters.
+     * Closing the stream closes the reader.
+     */
+    public TokenStream stream(Reader reader) {
+        return new TokenStream(new Scanner(new ReaderText(reader), names), reader);
+    }
+
+    private static int keywordHash(int first, int last, int length, int seed) {
+        return ((first << 8 | last) * seed + length * 0x9E3779B9) >>> (Integer.SIZE - KEYWORD_TABLE_BITS);
+    }
+
+    private static int findKeywordHashSeed(ArrayList<String> words) {
+        final var used = new boolean[1 << KEYWORD_TABLE_BITS];
+        for (var seed = 0x01000193; seed != 0x01000193 + 1_000_000; seed += 2) {
+            Arrays.fill(used, false);
+            var collision = false;
+            for (final var word : words) {
+                final var slot = keywordHash(word.charAt(0), word.charAt(word.length() - 1), word.length(), seed);
+                if (used[slot]) {
+                    collision = true;
+                    break;
+                }
+                used[slot] = true;
+            }
+            if (!collision) {
+                return seed;
+            }
+        }
+        throw new IllegalStateException("No perfect hash for keywords");
+    }
+
+    /**
+     * @return slot in {@link ReferenceLexer#KEYWORD_TEXTS}, -1 if the identifier is not a keyword or a boolean literal
+     */
+    private static int findKeyword(CharSequence text, int start, int end) {
+        final var length = end - start;
+        if (length < MIN_KEYWORD_LENGTH || length > MAX_KEYWORD_LENGTH) {
+            return -1;
+        }
+        final var slot = keywordHash(text.charAt(start), text.charAt(end - 1), length, KEYWORD_HASH_SEED);
+        final var candidate = KEYWORD_TEXTS[slot];
+        if (candidate == null || candidate.length() != length) {
+            return -1;
+        }
+        for (var i = 0; i < length; i++) {
+            if (candidate.charAt(i) != text.charAt(start + i)) {
+                return -1;
+            }
+        }
+        return slot;
+    }
+
+    private static byte charClass(char c) {
+        return c < 128 ? CHAR_CLASSES[c] : OTHER;
+    }
+
+    private static boolean isIdentifierStart(int codePoint) {
+        return codePoint < 128 ? CHAR_CLASSES[codePoint] == LETTER : Character.isUnicodeIdentifierStart(codePoint);
+    }
+
+    private static boolean isIdentifierPart(int codePoint) {
+        if (codePoint < 128) {
+            final var charClass = CHAR_CLASSES[codePoint];
+            return charClass == LETTER || charClass == DIGIT;
+        }
+        return Character.isUnicodeIdentifierPart(codePoint) && !Character.isIdentifierIgnorable(codePoint);
+    }
+
+    /**
+     * Stack of the enclosing indentation levels.
+     */
+    static final class Indentation {
+        /**
+         * Widths of the enclosing indentation levels, the top level (0) is implicit.
+         */
+        private int[] widths = new int[16];
+        private int depth;
+
+        /**
+         * Add the {@link IndentationToken}s before the first token of a line.
+         *
+         * @param start start of the token, including its leading trivia
+         * @param width indentation of the line
+         */
+        void indent(TokenBuffer tokens, int start, int width) {
+            while (depth > 0 && widths[depth - 1] > width) {
+                depth--;
+                tokens.addIndentation(start, start - 1, 0, 0, -1);
+            }
+            if (width > (depth > 0 ? widths[depth - 1] : 0)) {
+                if (depth == widths.length) {
+                    widths = Arrays.copyOf(widths, depth * 2);
+                }
+                widths[depth++] = width;
+                tokens.addIndentation(start, start - 1, 0, 0, 1);
+            }
+        }
+
+        /**
+         * Close all indentation levels at the end of the text.
+         *
+         * @return {@code false} if there were none
+         */
+        boolean dedentAll(TokenBuffer tokens, int end) {
+            final var hadLevels = depth > 0;
+            while (depth > 0) {
+                depth--;
+                tokens.addIndentation(end, end - 1, 0, 0, -1);
+            }
+            return hadLevels;
+        }
+    }
+
+    /**
+     * Resumable lexing state over a region of the text. Token offsets are relative to the start of the text, not the region.
+     */
+    static final class Scanner {
+        private final CharSequence text;
+        /**
+         * Source of more text past {@link Scanner#limit}, {@code null} if the whole region is already in {@link Scanner#text}.
+         */
+        private final ReaderText reader;
+        /**
+         * Same text as {@link Scanner#text} for vectorized scanning, {@code null} if the scanner is not vectorized.
+         */
+        private final MemorySegment asciiBytes;
+        /**
+         * Table to intern token values into, {@code null} to allocate them as is.
+         */
+        private final NameTable names;
+        private int limit;
+        private int position;
+        private boolean atLineStart = true;
+        private final Indentation indentation = new Indentation();
+        /**
+         * Token indices and indentation widths of the first tokens of lines, if indentation is deferred.
+         */
+        private int[] lineTokens;
+        private int[] lineWidths;
+        private int lineCount;
+        private boolean finished;
+        private final StringBuilder literal = new StringBuilder();
+
+        Scanner(CharSequence text, int start, int limit, boolean vectorized, NameTable names) {
+            this.text = text;
+            this.reader = null;
+            this.asciiBytes = vectorized && text instanceof Utf8SourceText utf8 && utf8.isAscii() ? utf8.bytes() : null;
+            this.names = names;
+            this.position = start;
+            this.limit = limit;
+        }
+
+        Scanner(ReaderText reader, NameTable names) {
+            this.text = reader;
+            this.reader = reader;
+            this.asciiBytes = null;
+            this.names = names;
+        }
+
+        /**
+         * Append the next token, preceded by the indentation tokens before it.
+         *
+         * @return {@code false} if the region is over and nothing was appended
+         */
+        boolean next(TokenBuffer tokens) {
+            if (finished) {
+                return false;
+            }
+            if (reader != null) {
+                reader.discardBefore(position);
+            }
+
+            final var start = position;
+            var lineBegin = start;
+            var index = start;
+            while (available(index)) {
+                final var c = text.charAt(index);
+                final var charClass = charClass(c);
+                if (charClass == WHITESPACE) {
+                    index = skipWhitespace(index + 1);
+                } else if (charClass == LINE_TERMINATOR) {
+                    index = skipLineTerminator(index);
+                    lineBegin = index;
+                    atLineStart = true;
+                } else if (charClass == COMMENT) {
+                    index = skipComment(index);
+                } else {
+                    break;
+                }
+            }
+
+            if (!available(index)) {
+                finished = true;
+                position = limit;
+                return indentation.dedentAll(tokens, limit);
+            }
+
+            if (atLineStart) {
+                atLineStart = false;
+                if (lineTokens == null) {
+                    indentation.indent(tokens, start, index - lineBegin);
+                } else {
+                    addLine(tokens.size(), index - lineBegin);
+                }
+            }
+
+            position = index;
+            scanToken(tokens, start, index);
+            return true;
+        }
+
+        /**
+         * Don't emit {@link IndentationToken}s, record the indentation of every line instead,
+         * to be turned into indentation tokens by the caller. Must be called before scanning.
+         */
+        void deferIndentation() {
+            lineTokens = new int[16];
+            lineWidths = new int[16];
+        }
+
+        int lineCount() {
+            return lineCount;
+        }
+
+        /**
+         * @return index of the first token of the line in the scanned tokens
+         */
+        int lineToken(int line) {
+            return lineTokens[line];
+        }
+
+        int lineWidth(int line) {
+            return lineWidths[line];
+        }
+
+        private void addLine(int token, int width) {
+            if (lineCount == lineTokens.length) {
+                lineTokens = Arrays.copyOf(lineTokens, lineCount * 2);
+                lineWidths = Arrays.copyOf(lineWidths, lineCount * 2);
+            }
+            lineTokens[lineCount] = token;
+            lineWidths[lineCount] = width;
+            lineCount++;
+        }
+
+        private boolean available(int index) {
+            if (index < limit) {
+                return true;
+            }
+            if (reader == null) {
+                return false;
+            }
+            limit = reader.fill(index + 1);
+            return index < limit;
+        }
+
+        private int skipLineTerminator(int index) {
+            if (text.charAt(index) == '\r' && available(index + 1) && text.charAt(index + 1) == '\n') {
+                return index + 2;
+            }
+            return index + 1;
+        }
+
+        private int skipWhitespace(int index) {
+            if (asciiBytes != null) {
+                return (int) VectorScanning.skipWhitespace(asciiBytes, index, limit);
+            }
+            while (available(index) && charClass(text.charAt(index)) == WHITESPACE) {
+                index++;
+            }
+            return index;
+        }
+
+        private int skipComment(int index) {
+            if (asciiBytes != null) {
+                return (int) VectorScanning.findLineTerminator(asciiBytes, index, limit);
+            }
+            while (available(index) && charClass(text.charAt(index)) != LINE_TERMINATOR) {
+                index++;
+            }
+            return index;
+        }
+
+        /**
+         * @return index of the first {@code "}, {@code \} or line terminator
+         */
+        private int skipStringBody(int index) {
+            if (asciiBytes != null) {
+                return (int) VectorScanning.findStringDelimiter(asciiBytes, index, limit);
+            }
+            while (available(index)) {
+                final var c = text.charAt(index);
+                if (c == '"' || c == '\\' || charClass(c) == LINE_TERMINATOR) {
+                    break;
+                }
+                index++;
+            }
+            return index;
+        }
+
+        /**
+         * Skip whitespace and a comment up to and including the line terminator.
+         */
+        private int skipTrailingTrivia(int index) {
+            while (available(index)) {
+                final var c = text.charAt(index);
+                switch (charClass(c)) {
+                    case WHITESPACE -> index = skipWhitespace(index + 1);
+                    case COMMENT -> index = skipComment(index);
+                    case LINE_TERMINATOR -> {
+                        atLineStart = true;
+                        return skipLineTerminator(index);
+                    }
+                    default -> {
+                        return index;
+                    }
+                }
+            }
+            return index;
+        }
+
+        private void scanToken(TokenBuffer tokens, int start, int textStart) {
+            final var c = text.charAt(textStart);
+            switch (charClass(c)) {
+                case LETTER -> scanIdentifier(tokens, start, textStart);
+                case DIGIT -> scanInteger(tokens, start, textStart);
+                case SYMBOL -> scanSymbol(tokens, start, textStart);
+                case QUOTE -> scanString(tokens, start, textStart);
+                case APOSTROPHE -> scanRune(tokens, start, textStart);
+                default -> {
+                    final var codePoint = Character.codePointAt(text, textStart);
+                    if (isIdentifierStart(codePoint)) {
+                        scanIdentifier(tokens, start, textStart);
+                    } else {
+                        addBad(tokens, start, textStart, textStart + Character.charCount(codePoint));
+                    }
+                }
+            }
+        }
+
+        private void scanIdentifier(TokenBuffer tokens, int start, int textStart) {
+            var index = textStart + Character.charCount(Character.codePointAt(text, textStart));
+            while (available(index)) {
+                final var c = text.charAt(index);
+                if (c < 128) {
+                    final var charClass = CHAR_CLASSES[c];
+                    if (charClass != LETTER && charClass != DIGIT) {
+                        break;
+                    }
+                    index++;
+                } else {
+                    final var codePoint = Character.codePointAt(text, index);
+                    if (!isIdentifierPart(codePoint)) {
+                        break;
+                    }
+                    index += Character.charCount(codePoint);
+                }
+            }
+
+            final var textEnd = index;
+            final var end = skipTrailingTrivia(textEnd);
+            position = end;
+            final var leadingTriviaLength = textStart - start;
+            final var trailingTriviaLength = end - textEnd;
+            final var slot = findKeyword(text, textStart, textEnd);
+            if (slot < 0) {
+                final var value = value(text, textStart, textEnd);
+                tokens.addIdentifier(start, end - 1, leadingTriviaLength, trailingTriviaLength, value, null);
+                return;
+            }
+
+            final var keyword = KEYWORDS[slot];
+            if (keyword == null) {
+                final var value = KEYWORD_TEXTS[slot].equals("true");
+                tokens.addBoolean(start, end - 1, leadingTriviaLength, trailingTriviaLength, value);
+            } else if (keyword.isContextual) {
+                tokens.addIdentifier(start, end - 1, leadingTriviaLength, trailingTriviaLength, keyword.text, keyword);
+            } else {
+                tokens.addKeyword(start, end - 1, leadingTriviaLength, trailingTriviaLength, keyword);
+            }
+        }
+
+        private void scanInteger(TokenBuffer tokens, int start, int textStart) {
+            var index = textStart;
+            var value = 0L;
+            var overflow = false;
+            while (available(index) && charClass(text.charAt(index)) == DIGIT) {
+                final var digit = text.charAt(index) - '0';
+                // 0x1999999999999999 * 10 + 5 is the max value of UInt64.
+                if (Long.compareUnsigned(value, 0x1999999999999999L) > 0 || value == 0x1999999999999999L && digit > 5) {
+                    overflow = true;
+                }
+                value = value * 10 + digit;
+                index++;
+            }
+
+            var type = BuiltInType.INT64;
+            var hasTypeSuffix = false;
+            if (available(index + 2) && (!available(index + 3) || !isIdentifierPart(Character.codePointAt(text, index + 3)))) {
+                final var suffixType = integerSuffix(text.charAt(index), text.charAt(index + 1), text.charAt(index + 2));
+                if (suffixType != null) {
+                    type = suffixType;
+                    hasTypeSuffix = true;
+                    index += 3;
+                }
+            }
+
+            final var textEnd = index;
+            final var end = skipTrailingTrivia(textEnd);
+            position = end;
+            final var leadingTriviaLength = textStart - start;
+            final var trailingTriviaLength = end - textEnd;
+            if (overflow || !fits(value, type)) {
+                tokens.addBad(start, end - 1, leadingTriviaLength, trailingTriviaLength);
+            } else {
+                tokens.addInteger(start, end - 1, leadingTriviaLength, trailingTriviaLength, type, hasTypeSuffix, value);
+            }
+        }
+
+        private static BuiltInType integerSuffix(char sign, char first, char second) {
+            final var signed = switch (sign) {
+                case 'i' -> true;
+                case 'u' -> false;
+                default -> null;
+            };
+            if (signed == null) {
+                return null;
+            }
+            if (first == '3' && second == '2') {
+                return signed ? BuiltInType.INT32 : BuiltInType.UINT32;
+            }
+            if (first == '6' && second == '4') {
+                return signed ? BuiltInType.INT64 : BuiltInType.UINT64;
+            }
+            return null;
+        }
+
+        private static boolean fits(long value, BuiltInType type) {
+            return switch (type) {
+                case INT32 -> Long.compareUnsigned(value, Integer.MAX_VALUE) <= 0;
+                case UINT32 -> Long.compareUnsigned(value, 0xFFFF_FFFFL) <= 0;
+                case INT64 -> value >= 0;
+                case UINT64 -> true;
+                case BOOLEAN, RUNE, STRING -> throw new IllegalStateException(type + " is invalid");
+            };
+        }
+
+        private void scanSymbol(TokenBuffer tokens, int start, int textStart) {
+            var state = 0;
+            var index = textStart;
+            var matchEnd = textStart;
+            Symbol match = null;
+            while (available(index)) {
+                final var c = text.charAt(index);
+                if (c >= 128 || (state = SYMBOL_TRANSITIONS[state * 128 + c]) == 0) {
+                    break;
+                }
+                index++;
+                if (SYMBOL_ACCEPTS[state] != null) {
+                    match = SYMBOL_ACCEPTS[state];
+                    matchEnd = index;
+                }
+            }
+
+            if (match == null) {
+                // Only a prefix of some symbol, but not a symbol by itself.
+                addBad(tokens, start, textStart, textStart + 1);
+                return;
+            }
+
+            final var end = skipTrailingTrivia(matchEnd);
+            position = end;
+            tokens.addSymbol(start, end - 1, textStart - start, end - matchEnd, match);
+        }
+
+        private String value(CharSequence source, int start, int end) {
+            return names != null ? names.intern(source, start, end) : source.subSequence(start, end).toString();
+        }
+
+        private void scanString(TokenBuffer tokens, int start, int textStart) {
+            literal.setLength(0);
+            var index = textStart + 1;
+            var runStart = index;
+            var hasEscapes = false;
+            var isValid = true;
+            while (available(index = skipStringBody(index))) {
+                final var c = text.charAt(index);
+                if (c == '"') {
+                    if (!isValid) {
+                        addBad(tokens, start, textStart, index + 1);
+                        return;
+                    }
+                    final String value;
+                    if (hasEscapes) {
+                        value = value(literal.append(text, runStart, index), 0, literal.length());
+                    } else {
+                        value = value(text, runStart, index);
+                    }
+                    final var textEnd = index + 1;
+                    final var end = skipTrailingTrivia(textEnd);
+                    position = end;
+                    tokens.addString(start, end - 1, textStart - start, end - textEnd, value);
+                    return;
+                }
+                if (c == '\\') {
+                    hasEscapes = true;
+                    literal.append(text, runStart, index);
+                    final var escapeEnd = scanEscape(index);
+                    isValid &= escapeEnd >= 0;
+                    index = Math.abs(escapeEnd);
+                    runStart = index;
+                    continue;
+                }
+                // Line terminator.
+                break;
+            }
+
+            addBad(tokens, start, textStart, index);
+        }
+
+        private void scanRune(TokenBuffer tokens, int start, int textStart) {
+            var index = textStart + 1;
+            var codePoint = -1;
+            if (!available(index) || text.charAt(index) == '\'' || charClass(text.charAt(index)) == LINE_TERMINATOR) {
+                addBad(tokens, start, textStart, index);
+                return;
+            }
+            if (text.charAt(index) == '\\') {
+                literal.setLength(0);
+                final var escapeEnd = scanEscape(index);
+                if (escapeEnd >= 0) {
+                    codePoint = literal.codePointAt(0);
+                }
+                index = Math.abs(escapeEnd);
+            } else {
+                codePoint = Character.codePointAt(text, index);
+                index += Character.charCount(codePoint);
+            }
+
+            if (!available(index) || text.charAt(index) != '\'') {
+                addBad(tokens, start, textStart, index);
+                return;
+            }
+            if (codePoint < 0) {
+                addBad(tokens, start, textStart, index + 1);
+                return;
+            }
+
+            final var textEnd = index + 1;
+            final var end = skipTrailingTrivia(textEnd);
+            position = end;
+            tokens.addRune(start, end - 1, textStart - start, end - textEnd, codePoint);
+        }
+
+        /**
+         * Append the escaped character to {@link Scanner#literal}.
+         *
+         * @return index after the escape sequence, or negated index where the invalid escape sequence ends (never 0)
+         */
+        private int scanEscape(int index) {
+            if (!available(index + 1)) {
+                return -(index + 1);
+            }
+            final var c = text.charAt(index + 1);
+            switch (c) {
+                case '0' -> literal.append('\0');
+                case 't' -> literal.append('\t');
+                case 'n' -> literal.append('\n');
+                case 'r' -> literal.append('\r');
+                case '\\', '\'', '"' -> literal.append(c);
+                case 'U' -> {
+                    if (!available(index + 2) || text.charAt(index + 2) != '+') {
+                        return -(index + 2);
+                    }
+                    var hexEnd = index + 3;
+                    var codePoint = 0;
+                    while (available(hexEnd) && hexEnd - index - 3 < 8 && Character.digit(text.charAt(hexEnd), 16) >= 0) {
+                        codePoint = codePoint << 4 | Character.digit(text.charAt(hexEnd), 16);
+                        hexEnd++;
+                    }
+                    final var digits = hexEnd - index - 3;
+                    if (digits < 4 || !Character.isValidCodePoint(codePoint)) {
+                        return -hexEnd;
+                    }
+                    literal.appendCodePoint(codePoint);
+                    return hexEnd;
+                }
+                default -> {
+                    return charClass(c) == LINE_TERMINATOR ? -(index + 1) : -(index + 2);
+                }
+            }
+            return index + 2;
+        }
+
+        private void addBad(TokenBuffer tokens, int start, int textStart, int textEnd) {
+            final var end = skipTrailingTrivia(textEnd);
+            position = end;
+            tokens.addBad(start, end - 1, textStart - start, end - textEnd);
+        }
+    }
+}
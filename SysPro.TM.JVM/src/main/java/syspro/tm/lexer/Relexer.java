@@ -0,0 +1,256 @@
+package syspro.tm.lexer;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+
+/**
+ * Default {@link Lexer#relex(String, List, TextChange)} implementation, treating the lexer as a black box.
+ * <p>
+ * The window starts at a line with no indentation before the change, where the indentation stack is known to be empty,
+ * and ends at a line end after the change. The window is lexed on its own, and its tokens are accepted
+ * once the first token of a non-indented line after the change matches the previous token at the same (shifted) position:
+ * from there on the lexer would produce the same tokens again, including {@link IndentationToken}s.
+ * Until then, the window grows in both directions, up to the whole text.
+ */
+final class Relexer {
+    private static final int MIN_WINDOW_GROWTH = 256;
+
+    private Relexer() {
+    }
+
+    private record Sync(int windowIndex, int previousIndex) {
+    }
+
+    static List<Token> relex(Lexer lexer, String code, List<Token> previousTokens, TextChange change) {
+        final var editStart = change.span.start;
+        final var newEditEnd = editStart + change.newText.length();
+        Objects.checkFromToIndex(editStart, newEditEnd, code.length());
+        if (previousTokens.isEmpty()) {
+            return lexer.lex(code);
+        }
+
+        final var delta = change.delta();
+        // Tokens before this one don't even touch the change, so they stay valid (e.g. "ab|" + "c" merges identifiers).
+        var firstDamaged = firstIndexEndingAtOrAfter(previousTokens, editStart - 1);
+        // Indentation tokens are zero-width, but they depend on the indentation of the line after them, which might be changed.
+        while (firstDamaged > 0 && previousTokens.get(firstDamaged - 1) instanceof IndentationToken) {
+            firstDamaged--;
+        }
+        var startIndex = lineStartBefore(code, previousTokens, firstDamaged);
+        var windowEnd = lineEndAfter(code, newEditEnd);
+        var backwardLines = 1;
+        while (true) {
+            final var windowStart = startIndex == 0 ? 0 : previousTokens.get(startIndex).start;
+            final var window = lexer.lex(code.substring(windowStart, windowEnd));
+
+            if (startIndex != 0 && !prefixMatches(window, windowStart, previousTokens, startIndex, firstDamaged)) {
+                // Lexer state at the window start is not what we assumed. Step back twice as far every time,
+                // so that a long multi-line construct is relexed a logarithmic number of times, not once per line.
+                for (var i = 0; i < backwardLines && startIndex != 0; i++) {
+                    startIndex = lineStartBefore(code, previousTokens, startIndex);
+                }
+                backwardLines *= 2;
+                continue;
+            }
+
+            if (windowEnd == code.length()) {
+                return splice(previousTokens, startIndex, window, windowStart, window.size(), previousTokens.size(), delta);
+            }
+
+            final var sync = findSync(code, window, windowStart, windowEnd, previousTokens, firstDamaged, newEditEnd, delta);
+            if (sync != null) {
+                return splice(previousTokens, startIndex, window, windowStart, sync.windowIndex, sync.previousIndex, delta);
+            }
+
+            windowEnd = lineEndAfter(code, windowEnd + Math.max(windowEnd - windowStart, MIN_WINDOW_GROWTH));
+        }
+    }
+
+    /**
+     * Tokens are sorted, and so are their ends (zero-width tokens end right before they start).
+     */
+    private static int firstIndexEndingAtOrAfter(List<Token> tokens, int position) {
+        var low = 0;
+        var high = tokens.size();
+        while (low < high) {
+            final var middle = (low + high) >>> 1;
+            if (tokens.get(middle).end < position) {
+                low = middle + 1;
+            } else {
+                high = middle;
+            }
+        }
+        return low;
+    }
+
+    private static int firstIndexStartingAtOrAfter(List<Token> tokens, int from, int position) {
+        var low = from;
+        var high = tokens.size();
+        while (low < high) {
+            final var middle = (low + high) >>> 1;
+            if (tokens.get(middle).start < position) {
+                low = middle + 1;
+            } else {
+                high = middle;
+            }
+        }
+        return low;
+    }
+
+    /**
+     * Index of the last token before {@code index}, which starts a non-indented line, 0 if there is none.
+     * Only called with tokens before the change, so their text is the same in the new code.
+     */
+    private static int lineStartBefore(String code, List<Token> tokens, int index) {
+        for (var i = index - 1; i > 0; i--) {
+            final var token = tokens.get(i);
+            if (!(token instanceof IndentationToken) && isLineStart(code, token.start + token.leadingTriviaLength)) {
+                return i;
+            }
+        }
+        return 0;
+    }
+
+    private static boolean isLineStart(String code, int position) {
+        if (position == 0) {
+            return true;
+        }
+        final var previous = code.charAt(position - 1);
+        return previous == '\n' || previous == '\r';
+    }
+
+    private static int lineEndAfter(String code, int position) {
+        final var length = code.length();
+        for (var i = position; i < length; i++) {
+            final var c = code.charAt(i);
+            if (c == '\n') {
+                return i + 1;
+            }
+            if (c == '\r') {
+                return i + 1 < length && code.charAt(i + 1) == '\n' ? i + 2 : i + 1;
+            }
+        }
+        return length;
+    }
+
+    private static boolean prefixMatches(List<Token> window, int windowStart, List<Token> previousTokens, int startIndex, int firstDamaged) {
+        final var count = firstDamaged - startIndex;
+        if (window.size() < count) {
+            return false;
+        }
+        for (var i = 0; i < count; i++) {
+            if (!isSame(previousTokens.get(startIndex + i), 0, window.get(i), windowStart)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static Sync findSync(String code, List<Token> window, int windowStart, int windowEnd,
+                                 List<Token> previousTokens, int firstDamaged, int newEditEnd, int delta) {
+        final var windowSize = window.size();
+        for (var i = 0; i < windowSize; i++) {
+            final var token = window.get(i);
+            final var start = token.start + windowStart;
+            // The token must be complete: its trailing trivia might continue past the window end.
+            if (start < newEditEnd || token instanceof IndentationToken || token.end + windowStart + 1 >= windowEnd) {
+                continue;
+            }
+            // The line break before the token must be unchanged too, otherwise the previous token might have been mid-line.
+            final var textStart = start + token.leadingTriviaLength;
+            if (textStart <= newEditEnd || !isLineStart(code, textStart)) {
+                continue;
+            }
+
+            final var previousStart = start - delta;
+            var previousIndex = firstIndexStartingAtOrAfter(previousTokens, firstDamaged, previousStart);
+            while (previousIndex < previousTokens.size()) {
+                final var previous = previousTokens.get(previousIndex);
+                if (previous.start != previousStart) {
+                    break;
+                }
+                if (!(previous instanceof IndentationToken)) {
+                    if (isSame(previous, delta, token, windowStart)) {
+                        return new Sync(i, previousIndex);
+                    }
+                    break;
+                }
+                previousIndex++;
+            }
+        }
+        return null;
+    }
+
+    private static boolean isSame(Token previous, int previousShift, Token token, int tokenShift) {
+        return previous.getClass() == token.getClass()
+                && previous.start + previousShift == token.start + tokenShift
+                && previous.end + previousShift == token.end + tokenShift
+                && previous.leadingTriviaLength == token.leadingTriviaLength
+                && previous.trailingTriviaLength == token.trailingTriviaLength
+                && previous.toSyntaxKind() == token.toSyntaxKind()
+                && previous.toString().equals(token.toString());
+    }
+
+    private static List<Token> splice(List<Token> previousTokens, int startIndex, List<Token> window, int windowStart,
+                                      int windowCount, int previousIndex, int delta) {
+        final var previousCount = previousTokens.size();
+        final var capacity = startIndex + windowCount + previousCount - previousIndex;
+        if (previousTokens instanceof TokenBuffer previousBuffer) {
+            // Copy the arrays and shift positions in place, without creating a Token per element.
+            final var result = new TokenBuffer(capacity);
+            result.addRange(previousBuffer, 0, startIndex);
+            if (window instanceof TokenBuffer windowBuffer) {
+                result.addRange(windowBuffer, 0, windowCount);
+            } else {
+                for (var i = 0; i < windowCount; i++) {
+                    result.add(window.get(i));
+                }
+            }
+            result.shiftRange(startIndex, result.size(), windowStart);
+            final var suffixStart = result.size();
+            result.addRange(previousBuffer, previousIndex, previousCount);
+            result.shiftRange(suffixStart, result.size(), delta);
+            return result;
+        }
+
+        final var result = new ArrayList<Token>(capacity);
+        for (var i = 0; i < startIndex; i++) {
+            result.add(previousTokens.get(i));
+        }
+        for (var i = 0; i < windowCount; i++) {
+            result.add(shift(window.get(i), windowStart));
+        }
+        for (var i = previousIndex; i < previousCount; i++) {
+            result.add(shift(previousTokens.get(i), delta));
+        }
+        return result;
+    }
+
+    /**
+     * Same as {@code token.withStart(token.start + delta).withEnd(token.end + delta)}, with one allocation instead of two.
+     */
+    private static Token shift(Token token, int delta) {
+        if (delta == 0) {
+            return token;
+        }
+
+        final var start = token.start + delta;
+        final var end = token.end + delta;
+        final var leading = token.leadingTriviaLength;
+        final var trailing = token.trailingTriviaLength;
+        return switch (token) {
+            case BadToken _ -> new BadToken(start, end, leading, trailing);
+            case IdentifierToken identifierToken ->
+                    new IdentifierToken(start, end, leading, trailing, identifierToken.value, identifierToken.contextualKeyword);
+            case IndentationToken indentationToken -> new IndentationToken(start, end, leading, trailing, indentationToken.difference);
+            case KeywordToken keywordToken -> new KeywordToken(start, end, leading, trailing, keywordToken.keyword);
+            case SymbolToken symbolToken -> new SymbolToken(start, end, leading, trailing, symbolToken.symbol);
+            case BooleanLiteralToken literalToken -> new BooleanLiteralToken(start, end, leading, trailing, literalToken.value);
+            case IntegerLiteralToken literalToken ->
+                    new IntegerLiteralToken(start, end, leading, trailing, literalToken.type, literalToken.hasTypeSuffix, literalToken.value);
+            case RuneLiteralToken literalToken -> new RuneLiteralToken(start, end, leading, trailing, literalToken.value);
+            case StringLiteralToken literalToken -> new StringLiteralToken(start, end, leading, trailing, literalToken.value);
+        };
+    }
+}
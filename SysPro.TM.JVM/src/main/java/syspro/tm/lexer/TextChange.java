@@ -0,0 +1,53 @@
+package syspro.tm.lexer;
+
+import syspro.tm.parser.TextSpan;
+
+import java.util.Objects;
+
+/**
+ * Replacement of the source text interval {@link TextChange#span} (in the old text) with {@link TextChange#newText}.
+ * Insertions have an empty span, deletions have an empty new text.
+ *
+ * @see Lexer#relex(String, java.util.List, TextChange)
+ */
+public final class TextChange {
+    public final TextSpan span;
+    public final String newText;
+
+    public TextChange(TextSpan span, String newText) {
+        this.span = Objects.requireNonNull(span, "span");
+        this.newText = Objects.requireNonNull(newText, "newText");
+    }
+
+    public static TextChange insert(int position, String text) {
+        return new TextChange(new TextSpan(position, 0), text);
+    }
+
+    public static TextChange delete(TextSpan span) {
+        return new TextChange(span, "");
+    }
+
+    /**
+     * Difference between the new and the old text lengths.
+     */
+    public int delta() {
+        return newText.length() - span.length;
+    }
+
+    /**
+     * Interval of {@link TextChange#newText} in the new text.
+     */
+    public TextSpan newSpan() {
+        return new TextSpan(span.start, newText.length());
+    }
+
+    public String applyTo(String oldText) {
+        Objects.checkFromIndexSize(span.start, span.length, oldText.length());
+        return oldText.substring(0, span.start) + newText + oldText.substring(span.end());
+    }
+
+    @Override
+    public String toString() {
+        return span + " -> \"" + newText + '"';
+    }
+}
@@ -1,6 +1,7 @@
 package syspro.tm.lexer;
 
 import syspro.tm.parser.AnySyntaxKind;
+import syspro.tm.parser.PackedTextSpan;
 import syspro.tm.parser.TextSpan;
 
 public abstract sealed class Token permits BadToken, IdentifierToken, IndentationToken, KeywordToken, LiteralToken, SymbolToken {
@@ -75,4 +76,23 @@ public abstract sealed class Token permits BadToken, IdentifierToken, Indentatio
         final var fullLength = end - start + 1;
         return new TextSpan(start, fullLength);
     }
+
+    /**
+     * Same as {@link Token#span()}, without allocation.
+     *
+     * @see PackedTextSpan
+     */
+    public final long packedSpan() {
+        final var fullLength = end - start + 1;
+        return PackedTextSpan.of(start + leadingTriviaLength, fullLength - leadingTriviaLength - trailingTriviaLength);
+    }
+
+    /**
+     * Same as {@link Token#fullSpan()}, without allocation.
+     *
+     * @see PackedTextSpan
+     */
+    public final long packedFullSpan() {
+        return PackedTextSpan.of(start, end - start + 1);
+    }
 }
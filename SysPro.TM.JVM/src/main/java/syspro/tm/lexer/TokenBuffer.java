@@ -0,0 +1,422 @@
+package syspro.tm.lexer;
+
+import syspro.tm.parser.AnySyntaxKind;
+import syspro.tm.parser.SyntaxKind;
+
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Objects;
+import java.util.RandomAccess;
+
+/**
+ * Compact append-only list of tokens, stored as parallel primitive arrays instead of one object per token.
+ * <p>
+ * Lexers can append tokens without allocating them via {@code add*} methods, and return the buffer from {@link Lexer#lex(String)}.
+ * {@link TokenBuffer#get(int)} creates a new {@link Token} on every call, so performance-sensitive consumers should
+ * prefer the per-index accessors, such as {@link TokenBuffer#start(int)} or {@link TokenBuffer#kind(int)}.
+ */
+public final class TokenBuffer extends AbstractList<Token> implements RandomAccess {
+    private static final int DEFAULT_CAPACITY = 16;
+    // Kind codes: terminal SyntaxKinds by ordinal, then keywords, then symbols.
+    private static final int FIRST_KEYWORD_CODE = SyntaxKind.SOURCE_TEXT.ordinal();
+    private static final int FIRST_SYMBOL_CODE = FIRST_KEYWORD_CODE + Keyword.values().length;
+    private static final AnySyntaxKind[] KINDS = kindsByCode();
+    private static final byte IDENTIFIER_CODE = code(SyntaxKind.IDENTIFIER);
+    private static final byte STRING_CODE = code(SyntaxKind.STRING);
+
+    /**
+     * Unsigned index in {@link TokenBuffer#KINDS}: a byte per token, and no references for the GC to trace.
+     */
+    private byte[] kinds;
+    private int[] starts;
+    private int[] ends;
+    private int[] leadingTriviaLengths;
+    private int[] trailingTriviaLengths;
+    /**
+     * Integer literal value, rune code point, boolean as 0 or 1, indentation difference,
+     * or contextual keyword ordinal + 1 for identifiers (0 if none).
+     */
+    private long[] values;
+    /**
+     * Index in {@link TokenBuffer#strings} for identifiers and string literals,
+     * {@link BuiltInType} ordinal shifted left by 1 and "has type suffix" flag in the lowest bit for integer literals.
+     */
+    private int[] payloads;
+    private final ArrayList<String> strings;
+    private int size;
+
+    public TokenBuffer() {
+        this(DEFAULT_CAPACITY);
+    }
+
+    public TokenBuffer(int capacity) {
+        kinds = new byte[capacity];
+        starts = new int[capacity];
+        ends = new int[capacity];
+        leadingTriviaLengths = new int[capacity];
+        trailingTriviaLengths = new int[capacity];
+        values = new long[capacity];
+        payloads = new int[capacity];
+        strings = new ArrayList<>();
+    }
+
+    private TokenBuffer(TokenBuffer other) {
+        final var size = other.size;
+        kinds = Arrays.copyOf(other.kinds, size);
+        starts = Arrays.copyOf(other.starts, size);
+        ends = Arrays.copyOf(other.ends, size);
+        leadingTriviaLengths = Arrays.copyOf(other.leadingTriviaLengths, size);
+        trailingTriviaLengths = Arrays.copyOf(other.trailingTriviaLengths, size);
+        values = Arrays.copyOf(other.values, size);
+        payloads = Arrays.copyOf(other.payloads, size);
+        strings = new ArrayList<>(other.strings);
+        this.size = size;
+    }
+
+    /**
+     * Independent copy without spare capacity.
+     */
+    public TokenBuffer copy() {
+        return new TokenBuffer(this);
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    /**
+     * @return same as {@link Token#toSyntaxKind()}
+     */
+    public AnySyntaxKind kind(int index) {
+        return kindAt(checkIndex(index));
+    }
+
+    public int start(int index) {
+        return starts[checkIndex(index)];
+    }
+
+    public int end(int index) {
+        return ends[checkIndex(index)];
+    }
+
+    public int leadingTriviaLength(int index) {
+        return leadingTriviaLengths[checkIndex(index)];
+    }
+
+    public int trailingTriviaLength(int index) {
+        return trailingTriviaLengths[checkIndex(index)];
+    }
+
+    /**
+     * @return {@link LiteralToken#type} for literals, {@code null} otherwise
+     */
+    public BuiltInType type(int index) {
+        return switch (kindAt(checkIndex(index))) {
+            case SyntaxKind.BOOLEAN -> BuiltInType.BOOLEAN;
+            case SyntaxKind.INTEGER -> BuiltInType.values()[payloads[index] >>> 1];
+            case SyntaxKind.RUNE -> BuiltInType.RUNE;
+            case SyntaxKind.STRING -> BuiltInType.STRING;
+            default -> null;
+        };
+    }
+
+    /**
+     * @return integer literal value, rune literal code point, boolean literal as 0 or 1, or indentation difference
+     */
+    public long value(int index) {
+        return switch (kindAt(checkIndex(index))) {
+            case SyntaxKind.BOOLEAN, SyntaxKind.INTEGER, SyntaxKind.RUNE, SyntaxKind.INDENT, SyntaxKind.DEDENT -> values[index];
+            default -> 0;
+        };
+    }
+
+    /**
+     * @return identifier or string literal value, {@code null} otherwise
+     */
+    public String stringValue(int index) {
+        return switch (kindAt(checkIndex(index))) {
+            case SyntaxKind.IDENTIFIER, SyntaxKind.STRING -> strings.get(payloads[index]);
+            default -> null;
+        };
+    }
+
+    /**
+     * @return {@link IdentifierToken#contextualKeyword} for identifiers, {@code null} otherwise
+     */
+    public Keyword contextualKeyword(int index) {
+        if (kinds[checkIndex(index)] != IDENTIFIER_CODE || values[index] == 0) {
+            return null;
+        }
+        return Keyword.values()[(int) values[index] - 1];
+    }
+
+    /**
+     * @return {@link IntegerLiteralToken#hasTypeSuffix} for integer literals, {@code false} otherwise
+     */
+    public boolean hasTypeSuffix(int index) {
+        return kindAt(checkIndex(index)) == SyntaxKind.INTEGER && (payloads[index] & 1) != 0;
+    }
+
+    @Override
+    public Token get(int index) {
+        final var start = start(index);
+        final var end = ends[index];
+        final var leadingTriviaLength = leadingTriviaLengths[index];
+        final var trailingTriviaLength = trailingTriviaLengths[index];
+        return switch (kindAt(index)) {
+            case Keyword keyword -> new KeywordToken(start, end, leadingTriviaLength, trailingTriviaLength, keyword);
+            case Symbol symbol -> new SymbolToken(start, end, leadingTriviaLength, trailingTriviaLength, symbol);
+            case SyntaxKind.BAD -> new BadToken(start, end, leadingTriviaLength, trailingTriviaLength);
+            case SyntaxKind.INDENT, SyntaxKind.DEDENT ->
+                    new IndentationToken(start, end, leadingTriviaLength, trailingTriviaLength, (int) values[index]);
+            case SyntaxKind.IDENTIFIER ->
+                    new IdentifierToken(start, end, leadingTriviaLength, trailingTriviaLength, stringValue(index), contextualKeyword(index));
+            case SyntaxKind.BOOLEAN ->
+                    new BooleanLiteralToken(start, end, leadingTriviaLength, trailingTriviaLength, values[index] != 0);
+            case SyntaxKind.INTEGER ->
+                    new IntegerLiteralToken(start, end, leadingTriviaLength, trailingTriviaLength, type(index), hasTypeSuffix(index), values[index]);
+            case SyntaxKind.RUNE ->
+                    new RuneLiteralToken(start, end, leadingTriviaLength, trailingTriviaLength, (int) values[index]);
+            case SyntaxKind.STRING ->
+                    new StringLiteralToken(start, end, leadingTriviaLength, trailingTriviaLength, stringValue(index));
+            case AnySyntaxKind kind -> throw new IllegalStateException("Unexpected token kind " + kind);
+        };
+    }
+
+    @Override
+    public void clear() {
+        strings.clear();
+        size = 0;
+        modCount++;
+    }
+
+    @Override
+    public boolean add(Token token) {
+        switch (token) {
+            case BadToken _ -> addBad(token.start, token.end, token.leadingTriviaLength, token.trailingTriviaLength);
+            case IdentifierToken identifierToken ->
+                    addIdentifier(token.start, token.end, token.leadingTriviaLength, token.trailingTriviaLength, identifierToken.value, identifierToken.contextualKeyword);
+            case IndentationToken indentationToken ->
+                    addIndentation(token.start, token.end, token.leadingTriviaLength, token.trailingTriviaLength, indentationToken.difference);
+            case KeywordToken keywordToken ->
+                    addKeyword(token.start, token.end, token.leadingTriviaLength, token.trailingTriviaLength, keywordToken.keyword);
+            case BooleanLiteralToken literalToken ->
+                    addBoolean(token.start, token.end, token.leadingTriviaLength, token.trailingTriviaLength, literalToken.value);
+            case IntegerLiteralToken literalToken ->
+                    addInteger(token.start, token.end, token.leadingTriviaLength, token.trailingTriviaLength, literalToken.type, literalToken.hasTypeSuffix, literalToken.value);
+            case RuneLiteralToken literalToken ->
+                    addRune(token.start, token.end, token.leadingTriviaLength, token.trailingTriviaLength, literalToken.value);
+            case StringLiteralToken literalToken ->
+                    addString(token.start, token.end, token.leadingTriviaLength, token.trailingTriviaLength, literalToken.value);
+            case SymbolToken symbolToken ->
+                    addSymbol(token.start, token.end, token.leadingTriviaLength, token.trailingTriviaLength, symbolToken.symbol);
+        }
+        return true;
+    }
+
+    /**
+     * Append tokens {@code [from, to)} of another buffer.
+     */
+    void addRange(TokenBuffer other, int from, int to) {
+        Objects.checkFromToIndex(from, to, other.size);
+        final var count = to - from;
+        while (size + count > kinds.length) {
+            grow();
+        }
+
+        System.arraycopy(other.kinds, from, kinds, size, count);
+        System.arraycopy(other.starts, from, starts, size, count);
+        System.arraycopy(other.ends, from, ends, size, count);
+        System.arraycopy(other.leadingTriviaLengths, from, leadingTriviaLengths, size, count);
+        System.arraycopy(other.trailingTriviaLengths, from, trailingTriviaLengths, size, count);
+        System.arraycopy(other.values, from, values, size, count);
+        System.arraycopy(other.payloads, from, payloads, size, count);
+        // Strings are added in token order, so the copied tokens own a contiguous run of them.
+        var firstString = -1;
+        var stringCount = 0;
+        for (var i = size; i < size + count; i++) {
+            if (ownsString(kinds[i])) {
+                if (firstString < 0) {
+                    firstString = payloads[i];
+                }
+                assert payloads[i] == firstString + stringCount : payloads[i];
+                payloads[i] += strings.size() - firstString;
+                stringCount++;
+            }
+        }
+        if (stringCount != 0) {
+            strings.addAll(other.strings.subList(firstString, firstString + stringCount));
+        }
+        size += count;
+        modCount++;
+    }
+
+    /**
+     * Move the start of the token back, making the text in between a part of its leading trivia.
+     */
+    void extendLeadingTrivia(int index, int start) {
+        checkIndex(index);
+        assert start <= starts[index] : start;
+        leadingTriviaLengths[index] += starts[index] - start;
+        starts[index] = start;
+    }
+
+    /**
+     * Remove the first {@code count} tokens, keeping the capacity.
+     */
+    void removePrefix(int count) {
+        Objects.checkFromToIndex(0, count, size);
+        // Strings are added in token order, so the removed tokens own a prefix of them.
+        var removedStrings = 0;
+        for (var i = 0; i < count; i++) {
+            if (ownsString(kinds[i])) {
+                removedStrings++;
+            }
+        }
+
+        final var remaining = size - count;
+        System.arraycopy(kinds, count, kinds, 0, remaining);
+        System.arraycopy(starts, count, starts, 0, remaining);
+        System.arraycopy(ends, count, ends, 0, remaining);
+        System.arraycopy(leadingTriviaLengths, count, leadingTriviaLengths, 0, remaining);
+        System.arraycopy(trailingTriviaLengths, count, trailingTriviaLengths, 0, remaining);
+        System.arraycopy(values, count, values, 0, remaining);
+        System.arraycopy(payloads, count, payloads, 0, remaining);
+        if (removedStrings != 0) {
+            strings.subList(0, removedStrings).clear();
+            for (var i = 0; i < remaining; i++) {
+                if (ownsString(kinds[i])) {
+                    payloads[i] -= removedStrings;
+                }
+            }
+        }
+        size = remaining;
+        modCount++;
+    }
+
+    /**
+     * Move tokens {@code [from, to)} by {@code delta} positions in place.
+     */
+    void shiftRange(int from, int to, int delta) {
+        Objects.checkFromToIndex(from, to, size);
+        for (var i = from; i < to; i++) {
+            starts[i] += delta;
+            ends[i] += delta;
+        }
+    }
+
+    public void addBad(int start, int end, int leadingTriviaLength, int trailingTriviaLength) {
+        append(code(SyntaxKind.BAD), start, end, leadingTriviaLength, trailingTriviaLength, 0, 0);
+    }
+
+    public void addIdentifier(int start, int end, int leadingTriviaLength, int trailingTriviaLength, String value, Keyword contextualKeyword) {
+        assert value != null;
+        assert contextualKeyword == null || contextualKeyword.isContextual : contextualKeyword;
+        final var contextualKeywordValue = contextualKeyword == null ? 0 : contextualKeyword.ordinal() + 1;
+        append(IDENTIFIER_CODE, start, end, leadingTriviaLength, trailingTriviaLength, contextualKeywordValue, addString(value));
+    }
+
+    public void addIndentation(int start, int end, int leadingTriviaLength, int trailingTriviaLength, int difference) {
+        final var kind = difference > 0 ? SyntaxKind.INDENT : SyntaxKind.DEDENT;
+        append(code(kind), start, end, leadingTriviaLength, trailingTriviaLength, difference, 0);
+    }
+
+    public void addKeyword(int start, int end, int leadingTriviaLength, int trailingTriviaLength, Keyword keyword) {
+        append(code(keyword), start, end, leadingTriviaLength, trailingTriviaLength, 0, 0);
+    }
+
+    public void addSymbol(int start, int end, int leadingTriviaLength, int trailingTriviaLength, Symbol symbol) {
+        append(code(symbol), start, end, leadingTriviaLength, trailingTriviaLength, 0, 0);
+    }
+
+    public void addBoolean(int start, int end, int leadingTriviaLength, int trailingTriviaLength, boolean value) {
+        append(code(SyntaxKind.BOOLEAN), start, end, leadingTriviaLength, trailingTriviaLength, value ? 1 : 0, 0);
+    }
+
+    public void addInteger(int start, int end, int leadingTriviaLength, int trailingTriviaLength, BuiltInType type, boolean hasTypeSuffix, long value) {
+        final var payload = type.ordinal() << 1 | (hasTypeSuffix ? 1 : 0);
+        append(code(SyntaxKind.INTEGER), start, end, leadingTriviaLength, trailingTriviaLength, value, payload);
+    }
+
+    public void addRune(int start, int end, int leadingTriviaLength, int trailingTriviaLength, int value) {
+        append(code(SyntaxKind.RUNE), start, end, leadingTriviaLength, trailingTriviaLength, value, 0);
+    }
+
+    public void addString(int start, int end, int leadingTriviaLength, int trailingTriviaLength, String value) {
+        assert value != null;
+        append(STRING_CODE, start, end, leadingTriviaLength, trailingTriviaLength, 0, addString(value));
+    }
+
+    private int addString(String value) {
+        strings.add(value);
+        return strings.size() - 1;
+    }
+
+    private void append(byte kind, int start, int end, int leadingTriviaLength, int trailingTriviaLength, long value, int payload) {
+        if (size == kinds.length) {
+            grow();
+        }
+
+        kinds[size] = kind;
+        starts[size] = start;
+        ends[size] = end;
+        leadingTriviaLengths[size] = leadingTriviaLength;
+        trailingTriviaLengths[size] = trailingTriviaLength;
+        values[size] = value;
+        payloads[size] = payload;
+        size++;
+        modCount++;
+    }
+
+    private void grow() {
+        final var capacity = Math.max(kinds.length * 2, DEFAULT_CAPACITY);
+        kinds = Arrays.copyOf(kinds, capacity);
+        starts = Arrays.copyOf(starts, capacity);
+        ends = Arrays.copyOf(ends, capacity);
+        leadingTriviaLengths = Arrays.copyOf(leadingTriviaLengths, capacity);
+        trailingTriviaLengths = Arrays.copyOf(trailingTriviaLengths, capacity);
+        values = Arrays.copyOf(values, capacity);
+        payloads = Arrays.copyOf(payloads, capacity);
+    }
+
+    private int checkIndex(int index) {
+        return Objects.checkIndex(index, size);
+    }
+
+    private AnySyntaxKind kindAt(int index) {
+        return KINDS[Byte.toUnsignedInt(kinds[index])];
+    }
+
+    private static boolean ownsString(byte kind) {
+        return kind == IDENTIFIER_CODE || kind == STRING_CODE;
+    }
+
+    private static byte code(SyntaxKind kind) {
+        assert kind.ordinal() < FIRST_KEYWORD_CODE : kind;
+        return (byte) kind.ordinal();
+    }
+
+    private static byte code(Keyword keyword) {
+        return (byte) (FIRST_KEYWORD_CODE + keyword.ordinal());
+    }
+
+    private static byte code(Symbol symbol) {
+        return (byte) (FIRST_SYMBOL_CODE + symbol.ordinal());
+    }
+
+    private static AnySyntaxKind[] kindsByCode() {
+        final var keywords = Keyword.values();
+        final var symbols = Symbol.values();
+        final var kinds = new AnySyntaxKind[FIRST_SYMBOL_CODE + symbols.length];
+        if (kinds.length > 1 << Byte.SIZE) {
+            throw new IllegalStateException("Token kind codes don't fit in a byte");
+        }
+
+        System.arraycopy(SyntaxKind.values(), 0, kinds, 0, FIRST_KEYWORD_CODE);
+        System.arraycopy(keywords, 0, kinds, FIRST_KEYWORD_CODE, keywords.length);
+        System.arraycopy(symbols, 0, kinds, FIRST_SYMBOL_CODE, symbols.length);
+        return kinds;
+    }
+}
@@ -0,0 +1,104 @@
+package syspro.tm.lexer;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+/**
+ * Tokens produced on demand, with bounded lookahead: only the tokens up to the furthest {@link TokenStream#peek(int)}
+ * are kept in memory. Not thread-safe.
+ *
+ * @see ReferenceLexer#stream(CharSequence)
+ * @see ReferenceLexer#stream(java.io.Reader)
+ */
+public final class TokenStream implements Iterator<Token>, AutoCloseable {
+    private static final int MIN_COMPACTED_PREFIX = 64;
+
+    private final ReferenceLexer.Scanner scanner;
+    private final Closeable source;
+    private final TokenBuffer lookahead = new TokenBuffer();
+    private int index;
+
+    TokenStream(ReferenceLexer.Scanner scanner, Closeable source) {
+        this.scanner = scanner;
+        this.source = source;
+    }
+
+    @Override
+    public boolean hasNext() {
+        return fill(0);
+    }
+
+    @Override
+    public Token next() {
+        if (!fill(0)) {
+            throw new NoSuchElementException();
+        }
+        final var token = lookahead.get(index++);
+        if (index == lookahead.size()) {
+            lookahead.clear();
+            index = 0;
+        } else if (index >= MIN_COMPACTED_PREFIX && index * 2 >= lookahead.size()) {
+            // A parser that always peeks ahead never drains the lookahead, drop the consumed tokens anyway.
+            // At most as many tokens are moved as were consumed, so it's amortized constant time per token.
+            lookahead.removePrefix(index);
+            index = 0;
+        }
+        return token;
+    }
+
+    /**
+     * @return the token {@link TokenStream#next()} would return, {@code null} at the end
+     */
+    public Token peek() {
+        return peek(0);
+    }
+
+    /**
+     * @return the token after {@code offset} more tokens, {@code null} if there are fewer tokens left
+     */
+    public Token peek(int offset) {
+        if (offset < 0) {
+            throw new IllegalArgumentException("offset");
+        }
+        return fill(offset) ? lookahead.get(index + offset) : null;
+    }
+
+    public Spliterator<Token> spliterator() {
+        return Spliterators.spliteratorUnknownSize(this, Spliterator.ORDERED | Spliterator.NONNULL | Spliterator.IMMUTABLE);
+    }
+
+    /**
+     * Closing the stream closes this {@link TokenStream}.
+     */
+    public Stream<Token> stream() {
+        return StreamSupport.stream(spliterator(), false).onClose(this::close);
+    }
+
+    @Override
+    public void close() {
+        if (source == null) {
+            return;
+        }
+        try {
+            source.close();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private boolean fill(int offset) {
+        while (index + offset >= lookahead.size()) {
+            if (!scanner.next(lookahead)) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
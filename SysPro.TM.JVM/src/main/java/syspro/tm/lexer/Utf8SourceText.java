@@ -0,0 +1,278 @@
+package syspro.tm.lexer;
+
+import java.io.IOException;
+import java.lang.foreign.Arena;
+import java.lang.foreign.MemorySegment;
+import java.lang.foreign.ValueLayout;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Objects;
+
+/**
+ * Read-only view of UTF-8 source code in memory (e.g. a memory-mapped file) as UTF-16 chars, without decoding it into a {@link String}.
+ * Positions are in chars, same as if the text was decoded, so tokens lexed from this view have the usual offsets.
+ * Use {@link Utf8SourceText#byteOffset(int)} and {@link Utf8SourceText#charOffset(long)} to convert between the two.
+ * <p>
+ * Pure ASCII text is read directly, one byte per char. Otherwise, the byte offset of every 32nd char is recorded
+ * once, and chars are decoded on access, which is O(1) amortized for sequential access (like lexing).
+ * Malformed UTF-8 bytes are decoded as {@code U+FFFD}, one per byte.
+ * <p>
+ * Not thread-safe. The view is only valid while the memory segment is alive.
+ */
+public final class Utf8SourceText implements CharSequence {
+    private static final int CHECKPOINT_INTERVAL = 32;
+    private static final long NON_ASCII_MASK = 0x8080_8080_8080_8080L;
+
+    private final MemorySegment bytes;
+    private final int length;
+    /**
+     * {@code checkpoints[i]} is the byte offset of the code point containing char {@code i * CHECKPOINT_INTERVAL},
+     * shifted left by 1, with the lowest bit set if that char is a low surrogate. {@code null} for ASCII text.
+     */
+    private final long[] checkpoints;
+    private int cursorIndex;
+    private long cursorPosition;
+    private boolean cursorIsLowSurrogate;
+
+    private Utf8SourceText(MemorySegment bytes, int length, long[] checkpoints) {
+        this.bytes = bytes;
+        this.length = length;
+        this.checkpoints = checkpoints;
+    }
+
+    /**
+     * @param utf8 UTF-8 bytes without BOM, the segment is scanned once to validate it and find out its length in chars
+     */
+    public static Utf8SourceText of(MemorySegment utf8) {
+        final var size = utf8.byteSize();
+        var position = 0L;
+        while (position + Long.BYTES <= size && (utf8.get(ValueLayout.JAVA_LONG_UNALIGNED, position) & NON_ASCII_MASK) == 0) {
+            position += Long.BYTES;
+        }
+        while (position < size && utf8.get(ValueLayout.JAVA_BYTE, position) >= 0) {
+            position++;
+        }
+        if (position == size) {
+            if (size > Integer.MAX_VALUE) {
+                throw new IllegalArgumentException("Source text is too long: " + size);
+            }
+            return new Utf8SourceText(utf8, (int) size, null);
+        }
+
+        var checkpoints = new long[(int) Math.min(size / CHECKPOINT_INTERVAL + 1, Integer.MAX_VALUE - 8)];
+        var count = 0;
+        var index = 0L;
+        position = 0;
+        while (position < size) {
+            if (index % CHECKPOINT_INTERVAL == 0) {
+                if (count == checkpoints.length) {
+                    checkpoints = Arrays.copyOf(checkpoints, count * 2);
+                }
+                checkpoints[count++] = position << 1;
+            }
+            final var decoded = decode(utf8, position);
+            if (decoded >>> 3 >= Character.MIN_SUPPLEMENTARY_CODE_POINT) {
+                index++;
+                if (index % CHECKPOINT_INTERVAL == 0) {
+                    if (count == checkpoints.length) {
+                        checkpoints = Arrays.copyOf(checkpoints, count * 2);
+                    }
+                    checkpoints[count++] = position << 1 | 1;
+                }
+            }
+            index++;
+            position += decoded & 7;
+        }
+
+        if (index > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException("Source text is too long: " + index);
+        }
+        return new Utf8SourceText(utf8, (int) index, Arrays.copyOf(checkpoints, count));
+    }
+
+    /**
+     * Map the whole file into memory. The view is valid until the arena is closed, closing the channel doesn't affect it.
+     */
+    public static Utf8SourceText map(FileChannel channel, Arena arena) throws IOException {
+        return of(channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size(), arena));
+    }
+
+    /**
+     * Same text with an independent decoding cursor, for use in another thread.
+     */
+    Utf8SourceText duplicate() {
+        return new Utf8SourceText(bytes, length, checkpoints);
+    }
+
+    public MemorySegment bytes() {
+        return bytes;
+    }
+
+    public boolean isAscii() {
+        return checkpoints == null;
+    }
+
+    /**
+     * @param index char offset in {@code [0, length()]}
+     * @return offset of the first byte of the code point containing the char
+     */
+    public long byteOffset(int index) {
+        Objects.checkIndex(index, length + 1);
+        if (checkpoints == null) {
+            return index;
+        }
+        if (index == length) {
+            return bytes.byteSize();
+        }
+        seek(index);
+        return cursorPosition;
+    }
+
+    /**
+     * @param byteOffset byte offset in {@code [0, bytes().byteSize()]}
+     * @return char offset of the code point starting at the byte, or of the next one if the byte is in the middle of a code point
+     */
+    public int charOffset(long byteOffset) {
+        Objects.checkIndex(byteOffset, bytes.byteSize() + 1);
+        if (checkpoints == null) {
+            return (int) byteOffset;
+        }
+
+        var low = 0;
+        var high = checkpoints.length - 1;
+        while (low < high) {
+            final var middle = (low + high + 1) >>> 1;
+            // A low surrogate checkpoint is past the start of its code point.
+            final var checkpoint = checkpoints[middle];
+            if ((checkpoint >>> 1) + (checkpoint & 1) <= byteOffset) {
+                low = middle;
+            } else {
+                high = middle - 1;
+            }
+        }
+
+        var index = low * CHECKPOINT_INTERVAL;
+        var position = checkpoints[low] >>> 1;
+        if ((checkpoints[low] & 1) != 0) {
+            // The code point started one char earlier, skip its low surrogate.
+            position += decode(bytes, position) & 7;
+            index++;
+        }
+        while (position < byteOffset) {
+            final var decoded = decode(bytes, position);
+            index += decoded >>> 3 >= Character.MIN_SUPPLEMENTARY_CODE_POINT ? 2 : 1;
+            position += decoded & 7;
+        }
+        return index;
+    }
+
+    @Override
+    public int length() {
+        return length;
+    }
+
+    @Override
+    public char charAt(int index) {
+        Objects.checkIndex(index, length);
+        if (checkpoints == null) {
+            return (char) bytes.get(ValueLayout.JAVA_BYTE, index);
+        }
+
+        seek(index);
+        final var codePoint = decode(bytes, cursorPosition) >>> 3;
+        if (codePoint < Character.MIN_SUPPLEMENTARY_CODE_POINT) {
+            return (char) codePoint;
+        }
+        return cursorIsLowSurrogate ? Character.lowSurrogate(codePoint) : Character.highSurrogate(codePoint);
+    }
+
+    @Override
+    public String subSequence(int start, int end) {
+        Objects.checkFromToIndex(start, end, length);
+        if (checkpoints == null) {
+            return new String(bytes.asSlice(start, end - start).toArray(ValueLayout.JAVA_BYTE), StandardCharsets.ISO_8859_1);
+        }
+
+        final var chars = new char[end - start];
+        for (var i = start; i < end; i++) {
+            chars[i - start] = charAt(i);
+        }
+        return new String(chars);
+    }
+
+    @Override
+    public String toString() {
+        return subSequence(0, length);
+    }
+
+    private void seek(int index) {
+        if (index < cursorIndex || index - cursorIndex >= CHECKPOINT_INTERVAL) {
+            final var checkpoint = checkpoints[index / CHECKPOINT_INTERVAL];
+            cursorIndex = index - index % CHECKPOINT_INTERVAL;
+            cursorPosition = checkpoint >>> 1;
+            cursorIsLowSurrogate = (checkpoint & 1) != 0;
+        }
+
+        while (cursorIndex < index) {
+            final var decoded = decode(bytes, cursorPosition);
+            if (decoded >>> 3 >= Character.MIN_SUPPLEMENTARY_CODE_POINT && !cursorIsLowSurrogate) {
+                cursorIsLowSurrogate = true;
+            } else {
+                cursorPosition += decoded & 7;
+                cursorIsLowSurrogate = false;
+            }
+            cursorIndex++;
+        }
+    }
+
+    /**
+     * @return code point shifted left by 3, with its length in bytes in the lowest 3 bits
+     */
+    private static int decode(MemorySegment bytes, long position) {
+        final int first = bytes.get(ValueLayout.JAVA_BYTE, position);
+        if (first >= 0) {
+            return first << 3 | 1;
+        }
+
+        final int length;
+        final int minCodePoint;
+        var codePoint = 0;
+        if ((first & 0xE0) == 0xC0) {
+            length = 2;
+            minCodePoint = 0x80;
+            codePoint = first & 0x1F;
+        } else if ((first & 0xF0) == 0xE0) {
+            length = 3;
+            minCodePoint = 0x800;
+            codePoint = first & 0x0F;
+        } else if ((first & 0xF8) == 0xF0) {
+            length = 4;
+            minCodePoint = Character.MIN_SUPPLEMENTARY_CODE_POINT;
+            codePoint = first & 0x07;
+        } else {
+            return malformed();
+        }
+
+        if (position + length > bytes.byteSize()) {
+            return malformed();
+        }
+        for (var i = 1; i < length; i++) {
+            final int next = bytes.get(ValueLayout.JAVA_BYTE, position + i);
+            if ((next & 0xC0) != 0x80) {
+                return malformed();
+            }
+            codePoint = codePoint << 6 | next & 0x3F;
+        }
+
+        if (codePoint < minCodePoint || codePoint > Character.MAX_CODE_POINT
+                || codePoint >= Character.MIN_SURROGATE && codePoint <= Character.MAX_SURROGATE) {
+            return malformed();
+        }
+        return codePoint << 3 | length;
+    }
+
+    private static int malformed() {
+        return 0xFFFD << 3 | 1;
+    }
+}
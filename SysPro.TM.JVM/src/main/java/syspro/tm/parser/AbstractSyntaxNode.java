@@ -0,0 +1,165 @@
+package syspro.tm.parser;
+
+import syspro.tm.lexer.Token;
+
+/**
+ * Optional base class for immutable syntax nodes, built bottom-up (children before parents).
+ * <p>
+ * The first and the last terminals are found once, when the node is constructed, using already computed children values.
+ * All position and span queries are therefore O(1), and don't traverse the subtree like the {@link SyntaxNode} defaults do.
+ * For any correct syntax tree the results are the same as with the default implementations.
+ * <p>
+ * The whole subtree must be immutable: the terminals are cached when the node is constructed, so children that are
+ * changed afterwards (e.g. a slot of a child replaced, or a child that overrides {@code slot()} to compute it lazily)
+ * are not reflected in the positions and spans of this node. The slots array is copied for the same reason.
+ * <p>
+ * A node without any terminal descendants has no position: {@link AbstractSyntaxNode#span()} and
+ * {@link AbstractSyntaxNode#fullSpan()} return {@code null}, other position queries throw {@link IllegalStateException}.
+ */
+public abstract class AbstractSyntaxNode implements SyntaxNode {
+    private final AnySyntaxKind kind;
+    private final Token token;
+    private final SyntaxNode[] slots;
+    private final SyntaxNode firstTerminal;
+    private final SyntaxNode lastTerminal;
+    private TextSpan span;
+    private TextSpan fullSpan;
+
+    /**
+     * @param token non-{@code null} for terminal nodes
+     * @param slots direct children, {@code null} for missing optional slots
+     */
+    protected AbstractSyntaxNode(AnySyntaxKind kind, Token token, SyntaxNode... slots) {
+        this.kind = kind;
+        this.token = token;
+        this.slots = slots.clone();
+
+        if (token != null) {
+            this.firstTerminal = this;
+            this.lastTerminal = this;
+            return;
+        }
+
+        SyntaxNode firstTerminal = null;
+        for (final var slot : this.slots) {
+            if (slot != null && (firstTerminal = slot.firstTerminal()) != null) {
+                break;
+            }
+        }
+
+        SyntaxNode lastTerminal = null;
+        for (var i = this.slots.length - 1; i >= 0; i--) {
+            final var slot = this.slots[i];
+            if (slot != null && (lastTerminal = slot.lastTerminal()) != null) {
+                break;
+            }
+        }
+
+        this.firstTerminal = firstTerminal;
+        this.lastTerminal = lastTerminal;
+    }
+
+    @Override
+    public final AnySyntaxKind kind() {
+        return kind;
+    }
+
+    @Override
+    public final int slotCount() {
+        return slots.length;
+    }
+
+    @Override
+    public final SyntaxNode slot(int index) {
+        return slots[index];
+    }
+
+    @Override
+    public final Token token() {
+        return token;
+    }
+
+    @Override
+    public final SyntaxNode firstTerminal() {
+        return firstTerminal;
+    }
+
+    @Override
+    public final SyntaxNode lastTerminal() {
+        return lastTerminal;
+    }
+
+    @Override
+    public final int position() {
+        return firstToken().start;
+    }
+
+    @Override
+    public final int fullLength() {
+        return lastToken().end - firstToken().start + 1;
+    }
+
+    @Override
+    public final int length() {
+        return fullLength() - leadingTriviaLength() - trailingTriviaLength();
+    }
+
+    @Override
+    public final int leadingTriviaLength() {
+        return firstToken().leadingTriviaLength;
+    }
+
+    @Override
+    public final int trailingTriviaLength() {
+        return lastToken().trailingTriviaLength;
+    }
+
+    @Override
+    public final TextSpan span() {
+        var span = this.span;
+        if (span == null && firstTerminal != null && lastTerminal != null) {
+            // Racy, but TextSpan is immutable, so at worst it is computed more than once.
+            this.span = span = new TextSpan(position() + leadingTriviaLength(), length());
+        }
+        return span;
+    }
+
+    @Override
+    public final TextSpan fullSpan() {
+        var fullSpan = this.fullSpan;
+        if (fullSpan == null && firstTerminal != null && lastTerminal != null) {
+            this.fullSpan = fullSpan = new TextSpan(position(), fullLength());
+        }
+        return fullSpan;
+    }
+
+    @Override
+    public final long packedSpan() {
+        if (firstTerminal == null || lastTerminal == null) {
+            return PackedTextSpan.NONE;
+        }
+        return PackedTextSpan.of(position() + leadingTriviaLength(), length());
+    }
+
+    @Override
+    public final long packedFullSpan() {
+        if (firstTerminal == null || lastTerminal == null) {
+            return PackedTextSpan.NONE;
+        }
+        return PackedTextSpan.of(position(), fullLength());
+    }
+
+    private Token firstToken() {
+        if (firstTerminal == null) {
+            throw new IllegalStateException("Syntax node " + kind + " has no terminals");
+        }
+        return firstTerminal.token();
+    }
+
+    private Token lastToken() {
+        if (lastTerminal == null) {
+            throw new IllegalStateException("Syntax node " + kind + " has no terminals");
+        }
+        return lastTerminal.token();
+    }
+}
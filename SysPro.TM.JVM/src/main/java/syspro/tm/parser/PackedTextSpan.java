@@ -0,0 +1,87 @@
+package syspro.tm.parser;
+
+import java.util.Objects;
+
+/**
+ * Allocation-free alternative to {@link TextSpan}: a span packed into a single {@code long},
+ * with the start in the high 32 bits and the length in the low 32 bits.
+ * <p>
+ * Since both parts are non-negative, packed spans compare as plain {@code long} values in the same order as
+ * {@link TextSpan#compareTo(TextSpan)}, so they can be sorted with {@link java.util.Arrays#sort(long[])}.
+ * {@link PackedTextSpan#NONE} stands for a missing ({@code null}) span. It has the sign bit set,
+ * so it can't be the result of packing a valid span.
+ */
+public final class PackedTextSpan {
+    public static final long NONE = -1;
+
+    private PackedTextSpan() {
+    }
+
+    /**
+     * @throws IndexOutOfBoundsException if {@code start} or {@code length} is negative, or the end doesn't fit an {@code int}
+     */
+    public static long of(int start, int length) {
+        Objects.checkFromIndexSize(start, length, Integer.MAX_VALUE);
+        return (long) start << Integer.SIZE | length;
+    }
+
+    public static long fromBounds(int start, int end) {
+        return of(start, end - start);
+    }
+
+    /**
+     * @return {@link PackedTextSpan#NONE} for {@code null}
+     */
+    public static long of(TextSpan span) {
+        return span == null ? NONE : of(span.start, span.length);
+    }
+
+    /**
+     * @return {@code null} for {@link PackedTextSpan#NONE}
+     */
+    public static TextSpan toTextSpan(long span) {
+        return span == NONE ? null : new TextSpan(start(span), length(span));
+    }
+
+    public static int start(long span) {
+        return (int) (span >>> Integer.SIZE);
+    }
+
+    public static int length(long span) {
+        return (int) span;
+    }
+
+    public static int end(long span) {
+        return start(span) + length(span);
+    }
+
+    public static boolean isEmpty(long span) {
+        return length(span) == 0;
+    }
+
+    public static boolean contains(long span, int position) {
+        return span != NONE && start(span) <= position && position < end(span);
+    }
+
+    public static boolean contains(long span, long other) {
+        return span != NONE && other != NONE && start(span) <= start(other) && end(other) <= end(span);
+    }
+
+    /**
+     * Whether the spans share at least one position. Empty spans don't overlap anything.
+     */
+    public static boolean overlaps(long span, long other) {
+        return span != NONE && other != NONE && Math.max(start(span), start(other)) < Math.min(end(span), end(other));
+    }
+
+    /**
+     * Same order as {@link TextSpan#compareTo(TextSpan)}, {@link PackedTextSpan#NONE} goes first.
+     */
+    public static int compare(long span, long other) {
+        return Long.compare(span, other);
+    }
+
+    public static String toString(long span) {
+        return span == NONE ? "null" : "[" + start(span) + ", " + end(span) + ')';
+    }
+}
@@ -2,4 +2,13 @@ package syspro.tm.parser;
 
 public interface Parser {
     ParseResult parse(String code);
+
+    /**
+     * Called by the test harness instead of {@link Parser#parse(String)}.
+     * Override to read the source code directly from native memory without copying it into a {@link String}.
+     * The sequence must not be used after this method returns, nor on other threads: share {@code code.toString()} instead.
+     */
+    default ParseResult parse(CharSequence code) {
+        return parse(code.toString());
+    }
 }
@@ -65,6 +65,45 @@ public interface SyntaxNode {
         return new TextSpan(firstToken.start, fullLength);
     }
 
+    /**
+     * Same as {@link SyntaxNode#span()}, without allocation.
+     *
+     * @return {@link PackedTextSpan#NONE} if {@link SyntaxNode#span()} is {@code null}
+     */
+    default long packedSpan() {
+        final var firstTerminal = firstTerminal();
+        final var lastTerminal = lastTerminal();
+        if (firstTerminal == null || lastTerminal == null) {
+            return PackedTextSpan.NONE;
+        }
+
+        final var firstToken = firstTerminal.token();
+        final var lastToken = lastTerminal.token();
+        assert firstToken != null && lastToken != null;
+
+        final var start = firstToken.start + firstToken.leadingTriviaLength;
+        return PackedTextSpan.fromBounds(start, lastToken.end + 1 - lastToken.trailingTriviaLength);
+    }
+
+    /**
+     * Same as {@link SyntaxNode#fullSpan()}, without allocation.
+     *
+     * @return {@link PackedTextSpan#NONE} if {@link SyntaxNode#fullSpan()} is {@code null}
+     */
+    default long packedFullSpan() {
+        final var firstTerminal = firstTerminal();
+        final var lastTerminal = lastTerminal();
+        if (firstTerminal == null || lastTerminal == null) {
+            return PackedTextSpan.NONE;
+        }
+
+        final var firstToken = firstTerminal.token();
+        final var lastToken = lastTerminal.token();
+        assert firstToken != null && lastToken != null;
+
+        return PackedTextSpan.fromBounds(firstToken.start, lastToken.end + 1);
+    }
+
     /**
      * @see SyntaxNode#length()
      * @see SyntaxNode#fullSpan()
@@ -124,12 +163,18 @@ public interface SyntaxNode {
      * <p>
      * The implementation doesn't sort all descendant terminals, only finds the first in tree traversal order.
      * For any correct syntax tree it is equivalent, but faster.
+     * <p>
+     * Based on {@link SyntaxNode#descendants(boolean)}, if it is overridden.
      */
     default SyntaxNode firstTerminal() {
         if (isTerminal()) {
             return this;
         }
 
+        if (!SyntaxTreeWalker.overridesDescendants(this)) {
+            return SyntaxTreeWalker.firstTerminal(this);
+        }
+
         final var descendants = descendants(false);
 
         for (var descendant : descendants) {
@@ -146,12 +191,18 @@ public interface SyntaxNode {
      * <p>
      * The implementation doesn't sort all descendant terminals, only finds the last in tree traversal order.
      * For any correct syntax tree it is equivalent, but faster.
+     * <p>
+     * Based on {@link SyntaxNode#descendants(boolean)}, if it is overridden.
      */
     default SyntaxNode lastTerminal() {
         if (isTerminal()) {
             return this;
         }
 
+        if (!SyntaxTreeWalker.overridesDescendants(this)) {
+            return SyntaxTreeWalker.lastTerminal(this);
+        }
+
         final var descendants = descendants(false);
 
         for (var descendant : descendants.reversed()) {
@@ -178,6 +229,7 @@ public interface SyntaxNode {
      * The algorithm in the current implementation is an iterative DFS with order correction.
      * <p>
      * @param includeSelf if {@code true}, the output list will include {@code this} as the first element
+     * @see SyntaxTreeWalker
      */
     default List<SyntaxNode> descendants(boolean includeSelf) {
         final var result = new ArrayList<SyntaxNode>();
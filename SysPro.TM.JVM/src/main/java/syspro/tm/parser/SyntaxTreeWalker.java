@@ -0,0 +1,195 @@
+package syspro.tm.parser;
+
+import java.util.Arrays;
+import java.util.IdentityHashMap;
+
+/**
+ * Depth-first syntax tree traversal with enter/leave callbacks, subtree skipping and early exit.
+ * <p>
+ * Unlike {@link SyntaxNode#descendants(boolean)}, the walker doesn't materialize the traversal:
+ * its explicit stack and visited set are reused between walks, so a walk doesn't allocate per visited node.
+ * Like {@link SyntaxNode#descendants(boolean)}, every node is visited at most once, even in malformed trees with loops.
+ * <p>
+ * A walker instance is not thread-safe and not reentrant: callbacks must not start another walk on the same walker.
+ */
+public final class SyntaxTreeWalker {
+    private static final int MAX_RETAINED_VISITED_SIZE = 1024;
+    private static final ThreadLocal<SyntaxTreeWalker> shared = ThreadLocal.withInitial(SyntaxTreeWalker::new);
+    private static final ClassValue<Boolean> overridesDescendants = new ClassValue<>() {
+        @Override
+        protected Boolean computeValue(Class<?> type) {
+            try {
+                return type.getMethod("descendants", boolean.class).getDeclaringClass() != SyntaxNode.class;
+            } catch (NoSuchMethodException e) {
+                throw new RuntimeException(e);
+            }
+        }
+    };
+    private static final Visitor FIRST_TERMINAL = node -> node.isTerminal() ? Action.STOP : Action.CONTINUE;
+
+    private IdentityHashMap<SyntaxNode, Void> visited = new IdentityHashMap<>(); // there is no IdentityHashSet
+    private SyntaxNode[] nodes = new SyntaxNode[16];
+    private int[] slotCounts = new int[16];
+    private int[] nextSlots = new int[16];
+    private int depth;
+    private boolean isWalking;
+
+    public enum Action {
+        CONTINUE,
+        /**
+         * Don't visit descendants of the entered node. {@link Visitor#leave(SyntaxNode)} is still called for it.
+         */
+        SKIP_CHILDREN,
+        STOP,
+    }
+
+    public interface Visitor {
+        /**
+         * Called in pre-order: before any descendant of the node.
+         */
+        Action enter(SyntaxNode node);
+
+        /**
+         * Called in post-order: after all descendants of the node.
+         */
+        default Action leave(SyntaxNode node) {
+            return Action.CONTINUE;
+        }
+    }
+
+    /**
+     * Visit the subtree, slots in increasing index order.
+     *
+     * @return the node for which the visitor returned {@link Action#STOP}, {@code null} if the walk wasn't stopped
+     */
+    public SyntaxNode walk(SyntaxNode root, Visitor visitor) {
+        return walk(root, visitor, false);
+    }
+
+    /**
+     * Visit the subtree, slots in decreasing index order.
+     * Unless some node is reachable twice, the order of {@link Visitor#leave(SyntaxNode)} calls is the reverse of the pre-order traversal.
+     *
+     * @return the node for which the visitor returned {@link Action#STOP}, {@code null} if the walk wasn't stopped
+     */
+    public SyntaxNode walkReversed(SyntaxNode root, Visitor visitor) {
+        return walk(root, visitor, true);
+    }
+
+    /**
+     * Same as {@link SyntaxNode#firstTerminal()} default implementation.
+     */
+    static SyntaxNode firstTerminal(SyntaxNode root) {
+        return acquire().walk(root, FIRST_TERMINAL, false);
+    }
+
+    /**
+     * Same as {@link SyntaxNode#lastTerminal()} default implementation.
+     */
+    static SyntaxNode lastTerminal(SyntaxNode root) {
+        // A node reachable twice counts at its first occurrence in pre-order, like in descendants(),
+        // so a reversed walk could stop at a different terminal: the whole subtree is walked instead.
+        final var visitor = new LastTerminalVisitor();
+        acquire().walk(root, visitor, false);
+        return visitor.lastTerminal;
+    }
+
+    /**
+     * Default implementations of {@link SyntaxNode#firstTerminal()} and {@link SyntaxNode#lastTerminal()}
+     * only use the walker when it is equivalent to {@link SyntaxNode#descendants(boolean)}.
+     */
+    static boolean overridesDescendants(SyntaxNode node) {
+        return overridesDescendants.get(node.getClass());
+    }
+
+    private static SyntaxTreeWalker acquire() {
+        final var walker = shared.get();
+        // Student code, called during the walk (e.g. slot()), might need a walk of its own.
+        return walker.isWalking ? new SyntaxTreeWalker() : walker;
+    }
+
+    private SyntaxNode walk(SyntaxNode root, Visitor visitor, boolean reversed) {
+        if (isWalking) {
+            throw new IllegalStateException("SyntaxTreeWalker is not reentrant");
+        }
+        if (root == null) {
+            return null;
+        }
+
+        isWalking = true;
+        try {
+            if (enter(root, visitor)) {
+                return root;
+            }
+
+            while (depth > 0) {
+                final var top = depth - 1;
+                final var node = nodes[top];
+                final var slotCount = slotCounts[top];
+                final var nextSlot = nextSlots[top];
+                if (nextSlot < slotCount) {
+                    nextSlots[top] = nextSlot + 1;
+                    final var child = node.slot(reversed ? slotCount - 1 - nextSlot : nextSlot);
+                    if (child != null && !visited.containsKey(child) && enter(child, visitor)) {
+                        return child;
+                    }
+                    continue;
+                }
+
+                nodes[--depth] = null;
+                if (visitor.leave(node) == Action.STOP) {
+                    return node;
+                }
+            }
+
+            return null;
+        } finally {
+            Arrays.fill(nodes, 0, depth, null);
+            depth = 0;
+            if (visited.size() > MAX_RETAINED_VISITED_SIZE) {
+                // clear() is proportional to the capacity, don't make every following small walk pay for a large one.
+                visited = new IdentityHashMap<>();
+            } else {
+                visited.clear();
+            }
+            isWalking = false;
+        }
+    }
+
+    /**
+     * @return {@code true} if the walk has to stop
+     */
+    private boolean enter(SyntaxNode node, Visitor visitor) {
+        visited.put(node, null);
+        final var action = visitor.enter(node);
+        if (action == Action.STOP) {
+            return true;
+        }
+
+        if (depth == nodes.length) {
+            final var capacity = depth * 2;
+            nodes = Arrays.copyOf(nodes, capacity);
+            slotCounts = Arrays.copyOf(slotCounts, capacity);
+            nextSlots = Arrays.copyOf(nextSlots, capacity);
+        }
+
+        final var slotCount = action == Action.SKIP_CHILDREN ? 0 : node.slotCount();
+        nodes[depth] = node;
+        slotCounts[depth] = slotCount;
+        nextSlots[depth] = 0;
+        depth++;
+        return false;
+    }
+
+    private static final class LastTerminalVisitor implements Visitor {
+        SyntaxNode lastTerminal;
+
+        @Override
+        public Action enter(SyntaxNode node) {
+            if (node.isTerminal()) {
+                lastTerminal = node;
+            }
+            return Action.CONTINUE;
+        }
+    }
+}
@@ -1,27 +1,104 @@
 package syspro.tm.parser;
 
-import java.util.Comparator;
+import java.util.IdentityHashMap;
 
 public final class SyntaxUtils {
+    /**
+     * Lists shorter than this are scanned linearly, binary search doesn't pay off for them.
+     */
+    private static final int BINARY_SEARCH_THRESHOLD = 8;
+
     private SyntaxUtils() {
     }
 
     /**
      * Find the most specific syntax subtree node at the specified position.
+     * <p>
+     * Descends from the root into the child containing the position, so only the nodes on a single path are inspected.
+     * For any correct syntax tree (children full spans are disjoint and contained in the parent full span)
+     * the result is the node with the shortest full span containing the position, the closest to the root among equals.
      */
     public static SyntaxNode nodeAtPosition(SyntaxNode root, int position) {
         if (root == null) {
             return null;
         }
 
-        return root.descendants(true).stream().filter(x -> {
-            final var span = x.fullSpan();
-            return span != null && span.contains(position);
-        }).min(Comparator.comparingInt(SyntaxUtils::nodeSpanLength)).orElse(null);
+        final var span = root.fullSpan();
+        if (span == null || !span.contains(position)) {
+            return null;
+        }
+
+        final var path = new IdentityHashMap<SyntaxNode, Void>(); // guards against loops in malformed trees
+        var result = root;
+        var resultLength = span.length;
+        var node = root;
+        final var childSpan = new TextSpan[1];
+        while (path.put(node, null) == null) {
+            final var child = childAtPosition(node, position, childSpan);
+            if (child == null) {
+                break;
+            }
+
+            // Descend through children with the same span too, they might have a more specific descendant.
+            final var childLength = childSpan[0].length;
+            if (childLength < resultLength) {
+                result = child;
+                resultLength = childLength;
+            }
+            node = child;
+        }
+
+        return result;
     }
 
-    private static int nodeSpanLength(SyntaxNode x) {
-        final var span = x.fullSpan();
-        return span == null ? Integer.MAX_VALUE : span.length;
+    /**
+     * @param childSpan receives {@link SyntaxNode#fullSpan()} of the found child, so that it isn't computed twice
+     */
+    private static SyntaxNode childAtPosition(SyntaxNode node, int position, TextSpan[] childSpan) {
+        final var slotCount = node.slotCount();
+        final var kind = node.kind();
+        if (slotCount >= BINARY_SEARCH_THRESHOLD && (kind == SyntaxKind.LIST || kind == SyntaxKind.SEPARATED_LIST)) {
+            var low = 0;
+            var high = slotCount - 1;
+            while (low <= high) {
+                final var middle = (low + high) >>> 1;
+                final var child = node.slot(middle);
+                final var span = child == null ? null : child.fullSpan();
+                if (span == null) {
+                    // Can't tell which way to go, e.g. an empty list element.
+                    return childAtPositionLinear(node, slotCount, position, childSpan);
+                }
+
+                if (position < span.start) {
+                    high = middle - 1;
+                } else if (position >= span.end()) {
+                    low = middle + 1;
+                } else {
+                    childSpan[0] = span;
+                    return child;
+                }
+            }
+
+            return null;
+        }
+
+        return childAtPositionLinear(node, slotCount, position, childSpan);
+    }
+
+    private static SyntaxNode childAtPositionLinear(SyntaxNode node, int slotCount, int position, TextSpan[] childSpan) {
+        for (var i = 0; i < slotCount; i++) {
+            final var child = node.slot(i);
+            if (child == null) {
+                continue;
+            }
+
+            final var span = child.fullSpan();
+            if (span != null && span.contains(position)) {
+                childSpan[0] = span;
+                return child;
+            }
+        }
+
+        return null;
     }
 }
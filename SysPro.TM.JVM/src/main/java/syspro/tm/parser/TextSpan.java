@@ -1,7 +1,5 @@
 package syspro.tm.parser;
 
-import java.util.Objects;
-
 /**
  * Source text interval, with inclusive start and exclusive end positions.
  */
@@ -36,6 +34,13 @@ public final class TextSpan implements Comparable<TextSpan> {
         return start + length;
     }
 
+    /**
+     * @see PackedTextSpan
+     */
+    public long packed() {
+        return PackedTextSpan.of(this);
+    }
+
     public boolean isEmpty() {
         return length == 0;
     }
@@ -56,7 +61,8 @@ public final class TextSpan implements Comparable<TextSpan> {
 
     @Override
     public int hashCode() {
-        return Objects.hash(start, length);
+        // Same value as Objects.hash(start, length), without boxing.
+        return 31 * (31 + start) + length;
     }
 
     @Override
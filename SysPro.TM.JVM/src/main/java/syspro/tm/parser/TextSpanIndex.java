@@ -0,0 +1,265 @@
+package syspro.tm.parser;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+import java.util.function.Function;
+
+/**
+ * Immutable index of items by their source text spans, e.g. {@link ParseResult#invalidRanges()}
+ * or {@link ParseResult#diagnostics()} by {@link Diagnostic#location()}.
+ * <p>
+ * Items are sorted by span, so the candidates of every query, the items starting early enough, are a prefix found
+ * by binary search. A sparse table over the ends of the spans then finds the latest ending candidate of any range
+ * in O(1), and the candidates ending late enough are reported in order by splitting ranges at it.
+ * Overlap and position queries cost O(log n + k) for k results, the index takes O(n log n) memory.
+ * Items without a span ({@code null}) are not indexed.
+ */
+public final class TextSpanIndex<T> {
+    private final Object[] items;
+    private final long[] spans;
+    /**
+     * Exclusive ends of the spans, {@link Integer#MIN_VALUE} for empty ones: they don't overlap anything.
+     */
+    private final int[] ends;
+    /**
+     * {@code latestEnds[k - 1][i]} is the index of the latest end among {@code ends[i..i + 2^k)}.
+     */
+    private final int[][] latestEnds;
+
+    private TextSpanIndex(Object[] items, long[] spans) {
+        this.items = items;
+        this.spans = spans;
+        this.ends = new int[spans.length];
+        for (var i = 0; i < spans.length; i++) {
+            ends[i] = PackedTextSpan.isEmpty(spans[i]) ? Integer.MIN_VALUE : PackedTextSpan.end(spans[i]);
+        }
+
+        final var levels = spans.length == 0 ? 0 : 31 - Integer.numberOfLeadingZeros(spans.length);
+        this.latestEnds = new int[levels][];
+        for (var level = 1; level <= levels; level++) {
+            final var half = 1 << (level - 1);
+            final var latest = latestEnds[level - 1] = new int[spans.length - (1 << level) + 1];
+            for (var i = 0; i < latest.length; i++) {
+                latest[i] = later(latestEndAt(level - 1, i), latestEndAt(level - 1, i + half));
+            }
+        }
+    }
+
+    public static TextSpanIndex<TextSpan> of(Collection<TextSpan> spans) {
+        return of(spans, Function.identity());
+    }
+
+    public static <T> TextSpanIndex<T> of(Collection<? extends T> items, Function<? super T, TextSpan> span) {
+        final var count = items.size();
+        final var packed = new long[count];
+        final var source = items.toArray();
+        var indexed = 0;
+        for (var i = 0; i < count; i++) {
+            @SuppressWarnings("unchecked")
+            final var itemSpan = span.apply((T) source[i]);
+            packed[i] = PackedTextSpan.of(itemSpan);
+            if (itemSpan != null) {
+                indexed++;
+            }
+        }
+
+        // PackedTextSpan order is the numeric order, so the spans are sorted as plain longs.
+        final var sortedSpans = new long[indexed];
+        var next = 0;
+        for (final var itemSpan : packed) {
+            if (itemSpan != PackedTextSpan.NONE) {
+                sortedSpans[next++] = itemSpan;
+            }
+        }
+        Arrays.sort(sortedSpans);
+
+        // Items with equal spans keep the collection order: each goes to the next free place in the run of its span.
+        final var sortedItems = new Object[indexed];
+        final var runFill = new int[indexed];
+        for (var i = 0; i < count; i++) {
+            if (packed[i] == PackedTextSpan.NONE) {
+                continue;
+            }
+
+            final var runStart = firstIndexOf(sortedSpans, packed[i]);
+            sortedItems[runStart + runFill[runStart]++] = source[i];
+        }
+
+        return new TextSpanIndex<>(sortedItems, sortedSpans);
+    }
+
+    /**
+     * @return index of the first occurrence of the span, which must be present
+     */
+    private static int firstIndexOf(long[] sortedSpans, long span) {
+        var low = 0;
+        var high = sortedSpans.length - 1;
+        while (low < high) {
+            final var middle = (low + high) >>> 1;
+            if (sortedSpans[middle] < span) {
+                low = middle + 1;
+            } else {
+                high = middle;
+            }
+        }
+        return low;
+    }
+
+    public int size() {
+        return items.length;
+    }
+
+    public boolean isEmpty() {
+        return items.length == 0;
+    }
+
+    /**
+     * Items with spans sharing at least one position with the span, in span order.
+     * Empty spans don't overlap anything.
+     */
+    public List<T> overlapping(TextSpan span) {
+        final var result = new ArrayList<T>();
+        if (!span.isEmpty()) {
+            collect(0, startingUpTo(span.end() - 1), span.start, result);
+        }
+        return result;
+    }
+
+    /**
+     * Items with spans containing the position, in span order.
+     */
+    public List<T> containing(int position) {
+        final var result = new ArrayList<T>();
+        collect(0, startingUpTo(position), position, result);
+        return result;
+    }
+
+    /**
+     * Items with spans containing the whole span (e.g. invalid ranges covering a syntax node), in span order.
+     */
+    public List<T> enclosing(TextSpan span) {
+        final var result = new ArrayList<T>();
+        final var candidates = startingUpTo(span.start);
+        if (!span.isEmpty()) {
+            collect(0, candidates, span.end() - 1, result);
+            return result;
+        }
+
+        // An empty span is also enclosed by the empty spans equal to it, which have no end in the sparse table.
+        // They go right before the longer spans with the same start.
+        final var emptyStart = firstIndexAtLeast(span.packed());
+        final var emptyEnd = emptyStart + countEqual(emptyStart, span.packed());
+        collect(0, emptyStart, span.start - 1, result);
+        for (var i = emptyStart; i < emptyEnd; i++) {
+            result.add(item(i));
+        }
+        collect(emptyEnd, candidates, span.start - 1, result);
+        return result;
+    }
+
+    /**
+     * @return number of items starting at or before the position
+     */
+    private int startingUpTo(int position) {
+        var low = 0;
+        var high = spans.length;
+        while (low < high) {
+            final var middle = (low + high) >>> 1;
+            if (PackedTextSpan.start(spans[middle]) <= position) {
+                low = middle + 1;
+            } else {
+                high = middle;
+            }
+        }
+        return low;
+    }
+
+    private int firstIndexAtLeast(long span) {
+        var low = 0;
+        var high = spans.length;
+        while (low < high) {
+            final var middle = (low + high) >>> 1;
+            if (spans[middle] < span) {
+                low = middle + 1;
+            } else {
+                high = middle;
+            }
+        }
+        return low;
+    }
+
+    private int countEqual(int from, long span) {
+        var count = 0;
+        while (from + count < spans.length && spans[from + count] == span) {
+            count++;
+        }
+        return count;
+    }
+
+    /**
+     * Adds the items of {@code [from, to)} ending after the position, in index order.
+     * A range is split at its latest ending item: either it ends late enough and is reported between the halves,
+     * or nothing in the range does. Every range examined is either empty, reported, or a sibling of a reported item,
+     * so the cost is O(k + 1) for k results.
+     */
+    private void collect(int from, int to, int position, List<T> result) {
+        if (from >= to) {
+            return;
+        }
+
+        // Pending ranges as (from, to) pairs, reported items as (~index, 0): the recursion would be k deep at worst.
+        var stack = new int[16];
+        var size = 0;
+        stack[size++] = from;
+        stack[size++] = to;
+        while (size > 0) {
+            final var high = stack[--size];
+            final var low = stack[--size];
+            if (low < 0) {
+                result.add(item(~low));
+                continue;
+            }
+            if (low >= high) {
+                continue;
+            }
+
+            final var latest = latestEnd(low, high);
+            if (ends[latest] <= position) {
+                continue;
+            }
+
+            if (size + 6 > stack.length) {
+                stack = Arrays.copyOf(stack, stack.length * 2);
+            }
+            stack[size++] = latest + 1;
+            stack[size++] = high;
+            stack[size++] = ~latest;
+            stack[size++] = 0;
+            stack[size++] = low;
+            stack[size++] = latest;
+        }
+    }
+
+    /**
+     * @return index of the latest end in the non-empty range {@code [from, to)}
+     */
+    private int latestEnd(int from, int to) {
+        final var level = 31 - Integer.numberOfLeadingZeros(to - from);
+        return later(latestEndAt(level, from), latestEndAt(level, to - (1 << level)));
+    }
+
+    private int latestEndAt(int level, int index) {
+        return level == 0 ? index : latestEnds[level - 1][index];
+    }
+
+    private int later(int first, int second) {
+        return ends[first] >= ends[second] ? first : second;
+    }
+
+    @SuppressWarnings("unchecked")
+    private T item(int index) {
+        return (T) items[index];
+    }
+}
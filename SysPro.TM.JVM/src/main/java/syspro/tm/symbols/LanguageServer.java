@@ -5,4 +5,13 @@ package syspro.tm.symbols;
  */
 public interface LanguageServer {
     SemanticModel buildModel(String code);
+
+    /**
+     * Called by the test harness instead of {@link LanguageServer#buildModel(String)}.
+     * Override to read the source code directly from native memory without copying it into a {@link String}.
+     * The sequence must not be used after this method returns, nor on other threads: share {@code code.toString()} instead.
+     */
+    default SemanticModel buildModel(CharSequence code) {
+        return buildModel(code.toString());
+    }
 }
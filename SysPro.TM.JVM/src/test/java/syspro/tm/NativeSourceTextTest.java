@@ -0,0 +1,65 @@
+package syspro.tm;
+
+import org.junit.jupiter.api.Test;
+
+import java.lang.foreign.Arena;
+import java.lang.foreign.MemorySegment;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertInstanceOf;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class NativeSourceTextTest {
+    @Test
+    void readsTextOfAnyLengthAndAlignment() {
+        try (final var arena = Arena.ofConfined()) {
+            final var buffer = arena.allocate(64, 16);
+            for (final var text : new String[]{"", "a", "class C\n    val x = 1\n", "val s = \"ü\"", "€", "x".repeat(40)}) {
+                final var bytes = text.getBytes(StandardCharsets.UTF_8);
+                // Every start address modulo the word size, so that both the byte and the word loops find the terminator.
+                for (var offset = 0; offset + bytes.length < buffer.byteSize() && offset < Long.BYTES; offset++) {
+                    buffer.fill((byte) 0);
+                    buffer.asSlice(offset).copyFrom(MemorySegment.ofArray(bytes));
+                    try (final var code = NativeSourceText.of(buffer.asSlice(offset))) {
+                        assertEquals(text.length(), code.length());
+                        assertEquals(text, code.toString());
+                        for (var i = 0; i < text.length(); i++) {
+                            assertEquals(text.charAt(i), code.charAt(i));
+                        }
+                        assertEquals(text.substring(text.length() / 2), code.subSequence(text.length() / 2, text.length()));
+                    }
+                }
+            }
+        }
+    }
+
+    @Test
+    void throwsAfterClose() {
+        try (final var arena = Arena.ofConfined()) {
+            for (final var text : new String[]{"class C", "val s = \"ü\""}) {
+                final var code = NativeSourceText.of(arena.allocateFrom(text));
+                // Cached values must not be returned either.
+                assertEquals(text, code.toString());
+                code.close();
+                assertThrows(IllegalStateException.class, code::length);
+                assertThrows(IllegalStateException.class, () -> code.charAt(0));
+                assertThrows(IllegalStateException.class, () -> code.subSequence(0, 1));
+                assertThrows(IllegalStateException.class, code::toString);
+            }
+        }
+    }
+
+    @Test
+    void rejectsOtherThreads() throws InterruptedException {
+        try (final var arena = Arena.ofConfined();
+             final var code = NativeSourceText.of(arena.allocateFrom("class C"));
+             final var executor = Executors.newSingleThreadExecutor()) {
+            final var error = assertThrows(ExecutionException.class, () -> executor.submit(() -> code.charAt(0)).get());
+            assertInstanceOf(WrongThreadException.class, error.getCause());
+            assertEquals('c', code.charAt(0));
+        }
+    }
+}
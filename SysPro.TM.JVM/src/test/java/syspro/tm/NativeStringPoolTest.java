@@ -0,0 +1,39 @@
+package syspro.tm;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class NativeStringPoolTest {
+    @Test
+    void reusesPooledStrings() {
+        final var pool = new NativeStringPool(1024);
+        final var segment = pool.get("value");
+        assertSame(segment, pool.get("value"));
+        assertEquals("value", segment.reinterpret(Long.MAX_VALUE).getString(0));
+        assertEquals(1, pool.hits());
+        assertEquals(1, pool.misses());
+    }
+
+    @Test
+    void keepsEvictedStringsValidWhileInUse() {
+        final var pool = new NativeStringPool(1);
+        final var segment = pool.get("value");
+        for (var i = 0; i < 10_000; i++) {
+            pool.get("other" + i);
+        }
+        assertTrue(pool.evictions() > 0);
+        assertNotEquals(segment.address(), pool.get("value").address());
+
+        // Like a running call, hold the evicted segment while the pool drops its own reference and the GC runs.
+        for (var i = 0; i < 10; i++) {
+            System.gc();
+            pool.get("garbage" + i);
+        }
+        assertTrue(segment.scope().isAlive());
+        assertEquals("value", segment.reinterpret(Long.MAX_VALUE).getString(0));
+    }
+}
@@ -0,0 +1,202 @@
+package syspro.tm;
+
+import org.junit.jupiter.api.Test;
+import syspro.tm.lexer.BadToken;
+import syspro.tm.lexer.BooleanLiteralToken;
+import syspro.tm.lexer.IdentifierToken;
+import syspro.tm.lexer.IndentationToken;
+import syspro.tm.lexer.IntegerLiteralToken;
+import syspro.tm.lexer.Keyword;
+import syspro.tm.lexer.KeywordToken;
+import syspro.tm.lexer.LiteralToken;
+import syspro.tm.lexer.ReferenceLexer;
+import syspro.tm.lexer.RuneLiteralToken;
+import syspro.tm.lexer.StringLiteralToken;
+import syspro.tm.lexer.Symbol;
+import syspro.tm.lexer.SymbolToken;
+import syspro.tm.lexer.Token;
+import syspro.tm.parser.AnySyntaxKind;
+import syspro.tm.parser.SyntaxKind;
+import syspro.tm.parser.SyntaxNode;
+
+import java.lang.foreign.MemorySegment;
+import java.lang.foreign.ValueLayout;
+import java.util.IdentityHashMap;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * Decodes serialized objects with the byte offsets native code uses, without loading the native library.
+ */
+class ObjectDescriptorsTest {
+    private static final long TOKEN_SIZE = 48;
+    private static final long NODE_SIZE = 96;
+
+    @Test
+    void serializesSyntaxTreeInPreOrder() {
+        final var keyword = terminal(new KeywordToken(0, 4, 0, 1, Keyword.CLASS));
+        final var identifier = terminal(new IdentifierToken(6, 6, 0, 0, "C", null));
+        // Reachable twice, written once.
+        final var shared = terminal(new SymbolToken(7, 7, 0, 1, Symbol.COLON));
+        final var list = new Node(SyntaxKind.LIST, null, identifier, shared);
+        final var root = new Node(SyntaxKind.SOURCE_TEXT, null, keyword, null, list, shared);
+        final var preorder = List.of(root, keyword, list, identifier, shared);
+        final var firstSlots = new int[]{0, 4, 4, 6, 6};
+        final var slotIndices = new int[]{1, -1, 2, 4, 3, 4};
+
+        final var call = new TestCall();
+        final var mark = call.allocator.mark();
+        try {
+            final var objects = call.serializeFlatObjects(List.of(root), new SyntaxTreeObjectDescriptor());
+            assertEquals(1L, objects.get(ValueLayout.JAVA_LONG, 0));
+            final var tree = objects.get(ValueLayout.ADDRESS, 8).reinterpret(Long.MAX_VALUE);
+
+            assertEquals(preorder.size(), tree.get(ValueLayout.JAVA_INT, 0));
+            assertEquals(slotIndices.length, tree.get(ValueLayout.JAVA_INT, 4));
+            final var nodesOffset = tree.get(ValueLayout.JAVA_LONG, 8);
+            final var slotIndicesOffset = tree.get(ValueLayout.JAVA_LONG, 16);
+            assertEquals(24L, nodesOffset);
+            assertEquals(nodesOffset + NODE_SIZE * preorder.size(), slotIndicesOffset);
+
+            for (var i = 0; i < slotIndices.length; i++) {
+                assertEquals(slotIndices[i], tree.get(ValueLayout.JAVA_INT, slotIndicesOffset + 4L * i), "Slot " + i);
+            }
+
+            for (var i = 0; i < preorder.size(); i++) {
+                final var node = preorder.get(i);
+                final var offset = nodesOffset + NODE_SIZE * i;
+                assertEquals(NativeAbi.syntaxKind(node.kind()), tree.get(ValueLayout.JAVA_INT, offset));
+                assertEquals(node.position(), tree.get(ValueLayout.JAVA_INT, offset + 4));
+                assertEquals(node.fullLength(), tree.get(ValueLayout.JAVA_INT, offset + 8));
+                assertEquals(node.leadingTriviaLength(), tree.get(ValueLayout.JAVA_INT, offset + 12));
+                assertEquals(node.trailingTriviaLength(), tree.get(ValueLayout.JAVA_INT, offset + 16));
+                assertEquals(node.slotCount(), tree.get(ValueLayout.JAVA_INT, offset + 20));
+                assertEquals(firstSlots[i], tree.get(ValueLayout.JAVA_INT, offset + 24));
+                assertEquals(node.token() != null ? 1 : 0, tree.get(ValueLayout.JAVA_INT, offset + 28));
+                assertEquals(call.handleOf(node), tree.get(ValueLayout.JAVA_LONG, offset + 32));
+                assertEquals(ObjectHandleTable.NULL_HANDLE, tree.get(ValueLayout.JAVA_LONG, offset + 40));
+                if (node.token() != null) {
+                    assertToken(node.token(), tree, offset + 48);
+                }
+            }
+        } finally {
+            call.allocator.reset(mark);
+        }
+    }
+
+    @Test
+    void packsTokenListsByValue() {
+        final var tokens = new ReferenceLexer().lex("""
+                class Box<T>
+                    val value: T
+                    def next(): Int64
+                        return 42u64 + 'x'.code + "s".length
+                    var flag = true
+                """);
+        final var descriptor = new TokenListObjectDescriptor();
+        final var call = new TestCall();
+        final var mark = call.allocator.mark();
+        try {
+            // The buffer published by the lexer, and the same tokens as objects.
+            final var packed = call.serializeFlatObjects(List.of(new CachedTokenList(tokens.copy())), descriptor);
+            final var materialized = call.serializeFlatObjects(List.of(List.copyOf(tokens)), descriptor);
+            for (final var objects : List.of(packed, materialized)) {
+                assertEquals(1L, objects.get(ValueLayout.JAVA_LONG, 0));
+                assertEquals(tokens.size(), objects.get(ValueLayout.JAVA_INT, 8));
+                final var data = objects.get(ValueLayout.ADDRESS, 16).reinterpret(Long.MAX_VALUE);
+                for (var i = 0; i < tokens.size(); i++) {
+                    assertToken(tokens.get(i), data, TOKEN_SIZE * i);
+                }
+            }
+        } finally {
+            call.allocator.reset(mark);
+        }
+    }
+
+    private static void assertToken(Token token, MemorySegment segment, long offset) {
+        final var kind = switch (token) {
+            case BadToken _ -> 0;
+            case IndentationToken indentationToken -> indentationToken.isIndent() ? 1 : 2;
+            case IdentifierToken _ -> 3;
+            case BooleanLiteralToken _ -> 4;
+            case IntegerLiteralToken _ -> 5;
+            case RuneLiteralToken _ -> 6;
+            case StringLiteralToken _ -> 7;
+            case KeywordToken keywordToken -> NativeAbi.tokenKind(keywordToken.keyword);
+            case SymbolToken symbolToken -> NativeAbi.tokenKind(symbolToken.symbol);
+        };
+        assertEquals(kind, segment.get(ValueLayout.JAVA_INT, offset), token.toString());
+        assertEquals(token.start, segment.get(ValueLayout.JAVA_INT, offset + 4));
+        assertEquals(token.end, segment.get(ValueLayout.JAVA_INT, offset + 8));
+        assertEquals(token.leadingTriviaLength, segment.get(ValueLayout.JAVA_INT, offset + 12));
+        assertEquals(token.trailingTriviaLength, segment.get(ValueLayout.JAVA_INT, offset + 16));
+        if (token instanceof LiteralToken literalToken) {
+            assertEquals(literalToken.type.ordinal(), segment.get(ValueLayout.JAVA_INT, offset + 20));
+        }
+
+        final var value2 = segment.get(ValueLayout.JAVA_LONG, offset + 32);
+        final var value3 = segment.get(ValueLayout.JAVA_LONG, offset + 40);
+        switch (token) {
+            case IdentifierToken identifierToken -> {
+                assertEquals(identifierToken.value, string(segment, offset + 24));
+                assertEquals(identifierToken.contextualKeyword != null ? NativeAbi.tokenKind(identifierToken.contextualKeyword) : 0, value3);
+            }
+            case BooleanLiteralToken literalToken -> assertEquals(literalToken.value ? 1L : 0, value2);
+            case IntegerLiteralToken literalToken -> {
+                assertEquals(literalToken.value, value2);
+                assertEquals(literalToken.hasTypeSuffix ? 1L : 0, value3);
+            }
+            case RuneLiteralToken literalToken -> assertEquals(literalToken.value, value3);
+            case StringLiteralToken literalToken -> assertEquals(literalToken.value, string(segment, offset + 24));
+            default -> {
+            }
+        }
+    }
+
+    private static String string(MemorySegment segment, long offset) {
+        return segment.get(ValueLayout.ADDRESS, offset).reinterpret(Long.MAX_VALUE).getString(0);
+    }
+
+    private static Node terminal(Token token) {
+        return new Node(token.toSyntaxKind(), token);
+    }
+
+    /**
+     * Hands out handles without the native library's handle table, and stores strings in the call's allocator.
+     */
+    private static final class TestCall extends LibraryCall {
+        private final IdentityHashMap<Object, Long> handles = new IdentityHashMap<>();
+
+        long handleOf(Object object) {
+            return handles.get(object);
+        }
+
+        @Override
+        protected long toObjectHandle(Object object) {
+            return handles.computeIfAbsent(object, _ -> handles.size() + 1L);
+        }
+
+        @Override
+        protected MemorySegment serializeString(String string) {
+            return allocator.allocateFrom(string);
+        }
+
+        @Override
+        public void call() {
+            throw new UnsupportedOperationException();
+        }
+    }
+
+    private record Node(AnySyntaxKind kind, Token token, SyntaxNode... slots) implements SyntaxNode {
+        @Override
+        public int slotCount() {
+            return slots.length;
+        }
+
+        @Override
+        public SyntaxNode slot(int index) {
+            return slots[index];
+        }
+    }
+}
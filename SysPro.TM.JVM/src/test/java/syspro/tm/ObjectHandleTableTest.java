@@ -0,0 +1,170 @@
+package syspro.tm;
+
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class ObjectHandleTableTest {
+    @Test
+    void reusesHandlesOfReleasedScopes() {
+        final var table = new ObjectHandleTable();
+        var maxHandle = ObjectHandleTable.NULL_HANDLE;
+        for (var round = 0; round < 100; round++) {
+            final var scope = table.openScope();
+            final var handles = new long[1000];
+            for (var i = 0; i < handles.length; i++) {
+                handles[i] = table.toHandle(new Object(), scope);
+                maxHandle = Math.max(maxHandle, handles[i]);
+            }
+
+            final var root = handles[handles.length - 1];
+            table.publish(scope, root);
+            table.release(root);
+            for (final var handle : handles) {
+                assertNull(table.get(handle));
+            }
+        }
+
+        assertTrue(maxHandle < 10_000, "Registered 100000 objects with handles up to " + maxHandle);
+    }
+
+    @Test
+    void keepsPinnedHandles() {
+        final var table = new ObjectHandleTable();
+        final var object = new Object();
+        final var handle = table.toHandle(object, ObjectHandleTable.PINNED);
+        final var scope = table.openScope();
+        assertEquals(handle, table.toHandle(object, scope));
+        table.publish(scope, handle);
+        table.release(handle);
+        assertSame(object, table.get(handle));
+        assertSame(ObjectHandleTable.PINNED, table.scopeOf(handle));
+    }
+
+    @Test
+    void pinsStaleScopes() throws InterruptedException {
+        final var table = new ObjectHandleTable(Duration.ofMillis(1));
+        final var stale = table.openScope();
+        final var object = new Object();
+        final var handle = table.toHandle(object, stale);
+        Thread.sleep(10);
+
+        final var scope = table.openScope();
+        assertSame(ObjectHandleTable.PINNED, table.scopeOf(handle));
+        final var lateObject = new Object();
+        final var lateHandle = table.toHandle(lateObject, stale);
+        assertSame(ObjectHandleTable.PINNED, table.scopeOf(lateHandle));
+
+        // Releasing the abandoned scope after all doesn't free anything, unlike releasing a fresh one.
+        table.publish(stale, handle);
+        table.release(handle);
+        assertSame(object, table.get(handle));
+        assertSame(lateObject, table.get(lateHandle));
+
+        final var freshHandle = table.toHandle(new Object(), scope);
+        table.publish(scope, freshHandle);
+        table.release(freshHandle);
+        assertNull(table.get(freshHandle));
+    }
+
+    @Test
+    void concurrentRegistrationReturnsOneHandlePerObject() throws InterruptedException, ExecutionException {
+        final var table = new ObjectHandleTable();
+        final var objects = new Object[10_000];
+        for (var i = 0; i < objects.length; i++) {
+            objects[i] = new Object();
+        }
+
+        final var threadCount = 8;
+        try (final var executor = Executors.newFixedThreadPool(threadCount)) {
+            final var results = new ArrayList<Future<long[]>>();
+            for (var thread = 0; thread < threadCount; thread++) {
+                results.add(executor.submit(() -> {
+                    final var scope = table.openScope();
+                    final var handles = new long[objects.length];
+                    for (var i = 0; i < objects.length; i++) {
+                        handles[i] = table.toHandle(objects[i], scope);
+                    }
+                    return handles;
+                }));
+            }
+
+            final var expected = results.getFirst().get();
+            for (var i = 0; i < objects.length; i++) {
+                assertSame(objects[i], table.get(expected[i]));
+            }
+            for (final var result : results) {
+                final var handles = result.get();
+                for (var i = 0; i < objects.length; i++) {
+                    assertEquals(expected[i], handles[i]);
+                }
+            }
+        }
+    }
+
+    @Test
+    void keepsHandlesUsedByOlderUnreleasedScope() {
+        final var table = new ObjectHandleTable();
+        final var shared = new Object();
+        final var older = table.openScope();
+        final var olderRoot = table.toHandle(new Object(), older);
+        final var sharedHandle = table.toHandle(shared, older);
+        table.publish(older, olderRoot);
+
+        final var newer = table.openScope();
+        final var newerRoot = table.toHandle(new Object(), newer);
+        assertEquals(sharedHandle, table.toHandle(shared, newer));
+        table.publish(newer, newerRoot);
+
+        // Native code serving the older request asks for objects through the shared handle, after the newer request used it.
+        final var child = new Object();
+        final var childHandle = table.toHandle(child, table.scopeOf(sharedHandle));
+
+        table.release(newerRoot);
+        assertSame(shared, table.get(sharedHandle));
+        assertSame(child, table.get(childHandle));
+
+        // Freed slots are recycled, but never the ones still in use.
+        final var other = table.openScope();
+        for (var i = 0; i < 10_000; i++) {
+            final var handle = table.toHandle(new Object(), other);
+            assertNotEquals(sharedHandle, handle);
+            assertNotEquals(childHandle, handle);
+        }
+        assertSame(shared, table.get(sharedHandle));
+        assertSame(child, table.get(childHandle));
+
+        table.release(olderRoot);
+        assertNull(table.get(sharedHandle));
+        assertNull(table.get(childHandle));
+        assertNull(table.get(newerRoot));
+    }
+
+    @Test
+    void reclaimsScopesIndependently() {
+        final var table = new ObjectHandleTable();
+        final var idle = table.openScope();
+        final var idleObject = new Object();
+        final var idleHandle = table.toHandle(idleObject, idle);
+
+        for (var i = 0; i < 100; i++) {
+            final var scope = table.openScope();
+            final var handle = table.toHandle(new Object(), scope);
+            table.publish(scope, handle);
+            table.release(handle);
+            assertNull(table.get(handle));
+        }
+
+        assertSame(idleObject, table.get(idleHandle));
+    }
+}
@@ -0,0 +1,86 @@
+package syspro.tm;
+
+import org.junit.jupiter.api.Test;
+
+import java.lang.foreign.MemorySegment;
+import java.lang.foreign.ValueLayout;
+import java.util.ArrayList;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class SlabAllocatorTest {
+    private final SlabAllocator allocator = SlabAllocator.current();
+
+    @Test
+    void zeroFillsMemoryReusedAfterReset() {
+        final var mark = allocator.mark();
+        try {
+            final var first = allocator.allocate(1000, 8);
+            first.fill((byte) 0xFF);
+            allocator.reset(mark);
+
+            final var second = allocator.allocate(1000, 8);
+            assertEquals(first.address(), second.address());
+            assertZero(second);
+        } finally {
+            allocator.reset(mark);
+        }
+    }
+
+    @Test
+    void resetsAcrossChunkBoundaries() {
+        final var outer = allocator.mark();
+        try {
+            final var kept = allocator.allocate(1000, 8);
+            kept.fill((byte) 1);
+            final var inner = allocator.mark();
+
+            // Spill over into several new chunks, including one larger than a chunk.
+            final var spilled = new ArrayList<MemorySegment>();
+            for (var i = 0; i < 5; i++) {
+                spilled.add(allocator.allocate(SlabAllocator.CHUNK_SIZE * 3 / 4, 16));
+            }
+            spilled.add(allocator.allocate(SlabAllocator.CHUNK_SIZE * 3, 16));
+            for (final var segment : spilled) {
+                segment.fill((byte) 0xFF);
+            }
+
+            allocator.reset(inner);
+            final var next = allocator.allocate(8, 8);
+            assertEquals(kept.address() + kept.byteSize(), next.address());
+            for (var i = 0; i < kept.byteSize(); i++) {
+                assertEquals((byte) 1, kept.get(ValueLayout.JAVA_BYTE, i));
+            }
+
+            // Chunks past the mark are reused from the start, and zeroed again.
+            for (var i = 0; i < 5; i++) {
+                assertZero(allocator.allocate(SlabAllocator.CHUNK_SIZE * 3 / 4, 16));
+            }
+            assertZero(allocator.allocate(SlabAllocator.CHUNK_SIZE * 3, 16));
+        } finally {
+            allocator.reset(outer);
+        }
+    }
+
+    @Test
+    void alignsAllocations() {
+        final var mark = allocator.mark();
+        try {
+            for (var alignment = 1L; alignment <= 64; alignment *= 2) {
+                allocator.allocate(3, 1);
+                final var segment = allocator.allocate(24, alignment);
+                assertEquals(0L, segment.address() % alignment);
+                assertEquals(24L, segment.byteSize());
+            }
+        } finally {
+            allocator.reset(mark);
+        }
+    }
+
+    private static void assertZero(MemorySegment segment) {
+        for (var i = 0; i < segment.byteSize(); i++) {
+            assertTrue(segment.get(ValueLayout.JAVA_BYTE, i) == 0, "Byte " + i + " is not zero");
+        }
+    }
+}
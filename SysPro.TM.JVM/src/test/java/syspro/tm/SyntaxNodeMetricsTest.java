@@ -0,0 +1,75 @@
+package syspro.tm;
+
+import org.junit.jupiter.api.Test;
+import syspro.tm.parser.RandomTrees;
+import syspro.tm.parser.SyntaxNode;
+
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+
+class SyntaxNodeMetricsTest {
+    @Test
+    void matchesBaselineOnWellFormedTrees() {
+        final var random = new Random(5);
+        for (var i = 0; i < 300; i++) {
+            final var root = RandomTrees.generate(random, 6, false);
+            final var metrics = new SyntaxNodeMetrics();
+            for (final var node : root.descendants(true)) {
+                final var terminals = metrics.terminals(node);
+                if (RandomTrees.baselineFirstTerminal(node) == null) {
+                    assertNull(terminals);
+                    continue;
+                }
+
+                assertNotNull(terminals);
+                assertMatchesBaseline(node, terminals);
+            }
+            assertEquals(root.descendants(true).size(), metrics.size());
+        }
+    }
+
+    @Test
+    void matchesBaselineOrFallsBackOnSharedNodes() {
+        final var random = new Random(6);
+        for (var i = 0; i < 300; i++) {
+            final var root = RandomTrees.generate(random, 6, true);
+            final var metrics = new SyntaxNodeMetrics();
+            // Children first, so that parents are computed with memoized subtrees.
+            for (final var node : root.descendants(true).reversed()) {
+                final var terminals = metrics.terminals(node);
+                if (terminals != null) {
+                    assertMatchesBaseline(node, terminals);
+                }
+            }
+        }
+    }
+
+    @Test
+    void memoizesPerScopeUntilReleased() {
+        final var table = new ObjectHandleTable();
+        final var scope = table.openScope();
+        final var metrics = scope.nodeMetrics();
+        assertSame(metrics, scope.nodeMetrics());
+
+        final var root = table.toHandle(new Object(), scope);
+        table.publish(scope, root);
+        table.release(root);
+        assertNotSame(metrics, scope.nodeMetrics());
+        assertNotSame(scope.nodeMetrics(), scope.nodeMetrics());
+        assertNotSame(ObjectHandleTable.PINNED.nodeMetrics(), ObjectHandleTable.PINNED.nodeMetrics());
+    }
+
+    private static void assertMatchesBaseline(SyntaxNode node, SyntaxNodeMetrics.Terminals terminals) {
+        final var first = RandomTrees.baselineFirstTerminal(node).token();
+        final var last = RandomTrees.baselineLastTerminal(node).token();
+        assertEquals(first.start, terminals.position());
+        assertEquals(last.end - first.start + 1, terminals.fullLength());
+        assertEquals(first.leadingTriviaLength, terminals.leadingTriviaLength());
+        assertEquals(last.trailingTriviaLength, terminals.trailingTriviaLength());
+    }
+}
@@ -0,0 +1,46 @@
+package syspro.tm.lexer;
+
+import org.junit.jupiter.api.Test;
+
+import java.lang.foreign.Arena;
+import java.lang.foreign.ValueLayout;
+import java.nio.charset.StandardCharsets;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+
+import static syspro.tm.lexer.TokenAssertions.assertSameTokens;
+
+class ParallelLexingTest {
+    private final ReferenceLexer lexer = new ReferenceLexer();
+
+    @Test
+    void matchesSequentialLexing() {
+        final var random = new Random(4);
+        final var pool = new ForkJoinPool(4);
+        try {
+            for (var i = 0; i < 20; i++) {
+                // Several chunks per thread, so that chunk edges fall inside indentation runs, comments and literals.
+                final var code = RandomSources.generate(random, 50_000 + random.nextInt(200_000), true);
+                assertSameTokens(lexer.lex(code), lexer.lexParallel(code, pool));
+            }
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    @Test
+    void matchesSequentialLexingOfUtf8Text() {
+        final var random = new Random(5);
+        final var pool = new ForkJoinPool(4);
+        try (final var arena = Arena.ofShared()) {
+            for (var i = 0; i < 5; i++) {
+                final var code = RandomSources.generate(random, 200_000, i % 2 == 0);
+                final var text = Utf8SourceText.of(arena.allocateFrom(ValueLayout.JAVA_BYTE, code.getBytes(StandardCharsets.UTF_8)));
+                assertSameTokens(lexer.lex(code), lexer.lexParallel(text, pool));
+                assertSameTokens(lexer.lex(code), ReferenceLexer.vectorized().lexParallel(text, pool));
+            }
+        } finally {
+            pool.shutdown();
+        }
+    }
+}
@@ -0,0 +1,37 @@
+package syspro.tm.lexer;
+
+import java.util.Random;
+
+/**
+ * Random concatenations of SysPro fragments, including malformed ones, to compare lexing paths on.
+ */
+final class RandomSources {
+    private static final String[] ASCII_PIECES = {
+            "a", "result", "class", "object", "null", "if", "return", "true", " ", "\t",
+            "\n", "\n  ", "\n    ", "\n      ", "\r\n", "\r", "\r\n  ", "\n\n\n", "\n# only a comment\n",
+            "+", "<:", "<=", "<", "&&", "?", "(", ")", "42", "7u32", "18446744073709551616",
+            "\"s\"", "\"x\\n\"", "\"unterminated", "'x'", "'\\U+0041'", "# comment", "$",
+    };
+
+    private static final String[] NON_ASCII_PIECES = {
+            "é", "ж", "😀", "'😀'", "\"日本\"", "x😀y",
+    };
+
+    private RandomSources() {
+    }
+
+    static String generate(Random random, int pieceCount, boolean isAscii) {
+        final var code = new StringBuilder();
+        for (var i = 0; i < pieceCount; i++) {
+            code.append(piece(random, isAscii));
+        }
+        return code.toString();
+    }
+
+    static String piece(Random random, boolean isAscii) {
+        if (!isAscii && random.nextInt(8) == 0) {
+            return NON_ASCII_PIECES[random.nextInt(NON_ASCII_PIECES.length)];
+        }
+        return ASCII_PIECES[random.nextInt(ASCII_PIECES.length)];
+    }
+}
@@ -0,0 +1,52 @@
+package syspro.tm.lexer;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertInstanceOf;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static syspro.tm.lexer.TokenAssertions.assertSameTokens;
+
+class ReferenceLexerTest {
+    private final ReferenceLexer lexer = new ReferenceLexer();
+
+    @Test
+    void lexesDeclarationWithIndentation() {
+        final var tokens = lexer.lex("class Foo<T> <: Bar\n    val x = 42u32 # c\n    return this\n");
+        assertSameTokens(List.of(
+                new IdentifierToken(0, 5, 0, 1, "class", Keyword.CLASS),
+                new IdentifierToken(6, 8, 0, 0, "Foo", null),
+                new SymbolToken(9, 9, 0, 0, Symbol.LESS_THAN),
+                new IdentifierToken(10, 10, 0, 0, "T", null),
+                new SymbolToken(11, 12, 0, 1, Symbol.GREATER_THAN),
+                new SymbolToken(13, 15, 0, 1, Symbol.BOUND),
+                new IdentifierToken(16, 19, 0, 1, "Bar", null),
+                new IndentationToken(20, 19, 0, 0, 1),
+                new KeywordToken(20, 27, 4, 1, Keyword.VAL),
+                new IdentifierToken(28, 29, 0, 1, "x", null),
+                new SymbolToken(30, 31, 0, 1, Symbol.EQUALS),
+                new IntegerLiteralToken(32, 41, 0, 5, BuiltInType.UINT32, true, 42),
+                new KeywordToken(42, 52, 4, 1, Keyword.RETURN),
+                new KeywordToken(53, 57, 0, 1, Keyword.THIS),
+                new IndentationToken(58, 57, 0, 0, -1)
+        ), tokens);
+    }
+
+    @Test
+    void recognizesKeywordsOnlyAsWholeWords() {
+        final var tokens = lexer.lex("object ifx if");
+        assertEquals(Keyword.OBJECT, ((IdentifierToken) tokens.get(0)).contextualKeyword);
+        assertNull(((IdentifierToken) tokens.get(1)).contextualKeyword);
+        assertEquals(Keyword.IF, ((KeywordToken) tokens.get(2)).keyword);
+    }
+
+    @Test
+    void reportsOutOfRangeIntegersAndUnknownCharactersAsBad() {
+        final var tokens = lexer.lex("18446744073709551616 $");
+        assertEquals(2, tokens.size());
+        assertInstanceOf(BadToken.class, tokens.get(0));
+        assertInstanceOf(BadToken.class, tokens.get(1));
+    }
+}
@@ -0,0 +1,69 @@
+package syspro.tm.lexer;
+
+import org.junit.jupiter.api.Test;
+import syspro.tm.parser.TextSpan;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static syspro.tm.lexer.TokenAssertions.assertSameTokens;
+
+class RelexerTest {
+    private final ReferenceLexer lexer = new ReferenceLexer();
+
+    @Test
+    void matchesFullLexingAfterRandomEdits() {
+        final var random = new Random(1);
+        for (var i = 0; i < 5000; i++) {
+            final var code = RandomSources.generate(random, random.nextInt(300), true);
+            final var start = random.nextInt(code.length() + 1);
+            final var length = random.nextInt(Math.min(10, code.length() - start) + 1);
+            final var change = new TextChange(new TextSpan(start, length), RandomSources.generate(random, random.nextInt(3), true));
+            final var newCode = change.applyTo(code);
+
+            final List<Token> previousTokens = lexer.lex(code);
+            assertSameTokens(lexer.lex(newCode), lexer.relex(newCode, previousTokens, change));
+            assertSameTokens(lexer.lex(newCode), lexer.relex(newCode, new ArrayList<>(previousTokens), change));
+        }
+    }
+
+    @Test
+    void matchesFullLexingAfterEditInsideLongBlock() {
+        // Opening a string literal changes the lexer state for the rest of the line only,
+        // but indenting a line changes the indentation of the whole block after it.
+        final var code = new StringBuilder("class A\n");
+        for (var i = 0; i < 2000; i++) {
+            code.append("    val x").append(i).append(" = \"").append(i).append("\" # comment\n");
+        }
+        final var text = code.toString();
+        final var previousTokens = lexer.lex(text);
+        for (final var edit : new String[]{"\"", "  ", "\n", "#", "\r\n  class B\n"}) {
+            final var change = new TextChange(new TextSpan(text.length() / 2, 0), edit);
+            final var newCode = change.applyTo(text);
+            assertSameTokens(lexer.lex(newCode), lexer.relex(newCode, previousTokens, change));
+        }
+    }
+
+    @Test
+    void relexesOnlyAroundIndentationChange() {
+        final var code = new StringBuilder();
+        for (var i = 0; i < 2000; i++) {
+            code.append("class A").append(i).append("\n    def f()\n        return 1\n    var x = 0\n\n");
+        }
+        final var text = code.toString();
+        final var previousTokens = lexer.lex(text);
+        final var lexedLength = new int[1];
+        final Lexer countingLexer = window -> {
+            lexedLength[0] += window.length();
+            return lexer.lex(window);
+        };
+
+        // The dedent before the edited line is no longer there.
+        final var change = new TextChange(new TextSpan(text.indexOf("var", text.length() / 2), 0), "    ");
+        final var newCode = change.applyTo(text);
+        assertSameTokens(lexer.lex(newCode), countingLexer.relex(newCode, previousTokens, change));
+        assertTrue(lexedLength[0] < 1000, "Relexed " + lexedLength[0] + " chars");
+    }
+}
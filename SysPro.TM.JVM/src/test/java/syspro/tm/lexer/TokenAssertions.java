@@ -0,0 +1,42 @@
+package syspro.tm.lexer;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+final class TokenAssertions {
+    private TokenAssertions() {
+    }
+
+    /**
+     * Tokens must be equal in every attribute, not just in {@link Token#toString()}.
+     */
+    static void assertSameTokens(List<Token> expected, List<Token> actual) {
+        assertEquals(describe(expected), describe(actual));
+    }
+
+    private static List<String> describe(List<Token> tokens) {
+        final var result = new ArrayList<String>(tokens.size());
+        for (final var token : tokens) {
+            result.add(describe(token));
+        }
+        return result;
+    }
+
+    private static String describe(Token token) {
+        final var attributes = switch (token) {
+            case IdentifierToken identifierToken -> identifierToken.value + " " + identifierToken.contextualKeyword;
+            case IndentationToken indentationToken -> String.valueOf(indentationToken.difference);
+            case KeywordToken keywordToken -> keywordToken.keyword.toString();
+            case SymbolToken symbolToken -> symbolToken.symbol.toString();
+            case BooleanLiteralToken literalToken -> String.valueOf(literalToken.value);
+            case IntegerLiteralToken literalToken -> literalToken.type + " " + literalToken.hasTypeSuffix + " " + literalToken.value;
+            case RuneLiteralToken literalToken -> String.valueOf(literalToken.value);
+            case StringLiteralToken literalToken -> literalToken.value;
+            case BadToken _ -> "";
+        };
+        return token.getClass().getSimpleName() + "(" + attributes + ") [" + token.start + ", " + token.end + "] "
+                + token.leadingTriviaLength + "/" + token.trailingTriviaLength;
+    }
+}
@@ -0,0 +1,200 @@
+package syspro.tm.lexer;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static syspro.tm.lexer.TokenAssertions.assertSameTokens;
+
+class TokenBufferTest {
+    private final ReferenceLexer lexer = new ReferenceLexer();
+
+    @Test
+    void storesEveryTokenKind() {
+        final var tokens = everyTokenKind();
+        final var buffer = new TokenBuffer(1);
+        buffer.addAll(tokens);
+        assertSameTokens(tokens, buffer);
+        assertSameTokens(tokens, buffer.copy());
+
+        for (var i = 0; i < tokens.size(); i++) {
+            final var token = tokens.get(i);
+            assertSame(token.toSyntaxKind(), buffer.kind(i), token.toString());
+            assertEquals(token.start, buffer.start(i));
+            assertEquals(token.end, buffer.end(i));
+            assertEquals(token.leadingTriviaLength, buffer.leadingTriviaLength(i));
+            assertEquals(token.trailingTriviaLength, buffer.trailingTriviaLength(i));
+            assertEquals(token instanceof LiteralToken literalToken ? literalToken.type : null, buffer.type(i));
+        }
+
+        assertThrows(IndexOutOfBoundsException.class, () -> buffer.kind(tokens.size()));
+        assertThrows(IndexOutOfBoundsException.class, () -> buffer.kind(-1));
+
+        buffer.clear();
+        assertEquals(0, buffer.size());
+        buffer.addAll(tokens.reversed());
+        assertSameTokens(tokens.reversed(), buffer);
+    }
+
+    @Test
+    void keepsStringsInTokenOrder() {
+        // Every operation relies on the tokens owning the strings in token order, and checks it with assertions:
+        // mixing them at random against a plain list catches any payload left pointing at the wrong string.
+        final var random = new Random(18);
+        final var buffer = new TokenBuffer();
+        final var expected = new ArrayList<Token>();
+        for (var step = 0; step < 2000; step++) {
+            switch (random.nextInt(3)) {
+                case 0 -> {
+                    final var source = sourceBuffer(random);
+                    final var from = random.nextInt(source.size() + 1);
+                    final var to = from + random.nextInt(source.size() - from + 1);
+                    buffer.addRange(source, from, to);
+                    expected.addAll(source.subList(from, to));
+                }
+                case 1 -> {
+                    final var count = random.nextInt(buffer.size() + 1);
+                    buffer.removePrefix(count);
+                    expected.subList(0, count).clear();
+                }
+                default -> {
+                    final var token = new IdentifierToken(step, step, 0, 0, "id" + step, null);
+                    buffer.add(token);
+                    expected.add(token);
+                }
+            }
+            assertSameTokens(expected, buffer);
+        }
+
+        // Copies of a buffer with a removed prefix start their strings from zero again.
+        final var copy = buffer.copy();
+        final var target = lexer.lex("val s = \"first\"");
+        target.addRange(copy, 0, copy.size());
+        final var expectedTarget = new ArrayList<Token>(lexer.lex("val s = \"first\""));
+        expectedTarget.addAll(expected);
+        assertSameTokens(expectedTarget, target);
+    }
+
+    @Test
+    void addRangeChecksBounds() {
+        final var source = lexer.lex("class A");
+        final var buffer = new TokenBuffer();
+        assertThrows(IndexOutOfBoundsException.class, () -> buffer.addRange(source, -1, 1));
+        assertThrows(IndexOutOfBoundsException.class, () -> buffer.addRange(source, 1, source.size() + 1));
+        assertThrows(IndexOutOfBoundsException.class, () -> buffer.addRange(source, 2, 1));
+        assertThrows(IndexOutOfBoundsException.class, () -> buffer.removePrefix(1));
+
+        buffer.addRange(source, 0, 0);
+        assertEquals(0, buffer.size());
+        buffer.addRange(source, 0, source.size());
+        assertSameTokens(source, buffer);
+        buffer.removePrefix(buffer.size());
+        assertEquals(0, buffer.size());
+    }
+
+    @Test
+    void shiftRangeMovesOnlyPositions() {
+        final var tokens = everyTokenKind();
+        final var buffer = new TokenBuffer();
+        buffer.addAll(tokens);
+        final var from = 3;
+        final var to = tokens.size() - 3;
+        buffer.shiftRange(from, to, 100);
+        buffer.shiftRange(to, to, 1000);
+
+        final var expected = new ArrayList<Token>();
+        for (var i = 0; i < tokens.size(); i++) {
+            final var token = tokens.get(i);
+            expected.add(from <= i && i < to ? moved(token, token.start + 100, token.end + 100, token.leadingTriviaLength) : token);
+        }
+        assertSameTokens(expected, buffer);
+
+        buffer.shiftRange(from, to, -100);
+        assertSameTokens(tokens, buffer);
+        assertThrows(IndexOutOfBoundsException.class, () -> buffer.shiftRange(0, tokens.size() + 1, 1));
+    }
+
+    @Test
+    void extendLeadingTriviaKeepsEnd() {
+        final var tokens = everyTokenKind();
+        final var buffer = new TokenBuffer();
+        buffer.addAll(tokens);
+        for (var i = 0; i < tokens.size(); i++) {
+            buffer.extendLeadingTrivia(i, tokens.get(i).start - i);
+        }
+
+        final var expected = new ArrayList<Token>();
+        for (var i = 0; i < tokens.size(); i++) {
+            final var token = tokens.get(i);
+            expected.add(moved(token, token.start - i, token.end, token.leadingTriviaLength + i));
+            assertEquals(token.end, buffer.end(i));
+            assertEquals(token.trailingTriviaLength, buffer.trailingTriviaLength(i));
+        }
+        assertSameTokens(expected, buffer);
+        assertThrows(IndexOutOfBoundsException.class, () -> buffer.extendLeadingTrivia(tokens.size(), 0));
+    }
+
+    private TokenBuffer sourceBuffer(Random random) {
+        final var source = lexer.lex(RandomSources.generate(random, random.nextInt(30), random.nextBoolean()));
+        // Strings of the source don't start at the beginning of its string list.
+        source.removePrefix(random.nextInt(source.size() + 1));
+        return source;
+    }
+
+    /**
+     * One token of every kind, and every variation of the packed values, at increasing positions.
+     */
+    private static List<Token> everyTokenKind() {
+        final var tokens = new ArrayList<Token>();
+        var position = 1000;
+        tokens.add(new BadToken(position, position++, 1, 0));
+        tokens.add(new IndentationToken(position, position++, 0, 0, 1));
+        tokens.add(new IndentationToken(position, position++, 0, 0, -1));
+        tokens.add(new IdentifierToken(position, position++, 2, 1, "name", null));
+        for (final var keyword : Keyword.values()) {
+            if (keyword.isContextual) {
+                tokens.add(new IdentifierToken(position, position++, 0, 1, keyword.toString(), keyword));
+            }
+            tokens.add(new KeywordToken(position, position++, 1, 0, keyword));
+        }
+        for (final var symbol : Symbol.values()) {
+            tokens.add(new SymbolToken(position, position++, 0, 2, symbol));
+        }
+        tokens.add(new BooleanLiteralToken(position, position++, 0, 0, true));
+        tokens.add(new BooleanLiteralToken(position, position++, 0, 0, false));
+        for (final var type : List.of(BuiltInType.INT32, BuiltInType.INT64, BuiltInType.UINT32, BuiltInType.UINT64)) {
+            tokens.add(new IntegerLiteralToken(position, position++, 0, 0, type, true, type == BuiltInType.UINT64 ? -1 : Long.MAX_VALUE));
+            tokens.add(new IntegerLiteralToken(position, position++, 0, 0, type, false, 0));
+        }
+        tokens.add(new RuneLiteralToken(position, position++, 0, 0, 0x1F600));
+        tokens.add(new StringLiteralToken(position, position++, 0, 0, ""));
+        tokens.add(new StringLiteralToken(position, position, 0, 0, "text"));
+        return tokens;
+    }
+
+    private static Token moved(Token token, int start, int end, int leadingTriviaLength) {
+        final var trailingTriviaLength = token.trailingTriviaLength;
+        return switch (token) {
+            case BadToken _ -> new BadToken(start, end, leadingTriviaLength, trailingTriviaLength);
+            case IdentifierToken identifierToken ->
+                    new IdentifierToken(start, end, leadingTriviaLength, trailingTriviaLength, identifierToken.value, identifierToken.contextualKeyword);
+            case IndentationToken indentationToken ->
+                    new IndentationToken(start, end, leadingTriviaLength, trailingTriviaLength, indentationToken.difference);
+            case KeywordToken keywordToken -> new KeywordToken(start, end, leadingTriviaLength, trailingTriviaLength, keywordToken.keyword);
+            case SymbolToken symbolToken -> new SymbolToken(start, end, leadingTriviaLength, trailingTriviaLength, symbolToken.symbol);
+            case BooleanLiteralToken literalToken ->
+                    new BooleanLiteralToken(start, end, leadingTriviaLength, trailingTriviaLength, literalToken.value);
+            case IntegerLiteralToken literalToken ->
+                    new IntegerLiteralToken(start, end, leadingTriviaLength, trailingTriviaLength, literalToken.type, literalToken.hasTypeSuffix, literalToken.value);
+            case RuneLiteralToken literalToken ->
+                    new RuneLiteralToken(start, end, leadingTriviaLength, trailingTriviaLength, literalToken.value);
+            case StringLiteralToken literalToken ->
+                    new StringLiteralToken(start, end, leadingTriviaLength, trailingTriviaLength, literalToken.value);
+        };
+    }
+}
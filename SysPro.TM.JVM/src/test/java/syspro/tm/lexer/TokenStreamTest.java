@@ -0,0 +1,84 @@
+package syspro.tm.lexer;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.Reader;
+import java.util.ArrayList;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static syspro.tm.lexer.TokenAssertions.assertSameTokens;
+
+class TokenStreamTest {
+    private final ReferenceLexer lexer = new ReferenceLexer();
+
+    @Test
+    void matchesLexingOfCharSequence() {
+        final var random = new Random(3);
+        for (var i = 0; i < 500; i++) {
+            final var code = RandomSources.generate(random, random.nextInt(2000), false);
+            final var tokens = new ArrayList<Token>();
+            lexer.stream(code).forEachRemaining(tokens::add);
+            assertSameTokens(lexer.lex(code), tokens);
+        }
+    }
+
+    @Test
+    void matchesLexingOfReaderReturningShortReads() {
+        final var random = new Random(7);
+        for (var i = 0; i < 500; i++) {
+            final var code = RandomSources.generate(random, random.nextInt(2000), false);
+            try (final var stream = lexer.stream(new ChunkedReader(code, random))) {
+                assertSameTokens(lexer.lex(code), stream.stream().toList());
+            }
+        }
+    }
+
+    @Test
+    void matchesLexingWhilePeekingAhead() {
+        final var random = new Random(11);
+        final var code = RandomSources.generate(random, 100_000, true);
+        final var tokens = new ArrayList<Token>();
+        final var stream = lexer.stream(code);
+        while (stream.peek(1) != null || stream.peek() != null) {
+            final var peeked = stream.peek();
+            final var token = stream.next();
+            assertEquals(peeked.start, token.start);
+            tokens.add(token);
+        }
+        assertFalse(stream.hasNext());
+        assertNull(stream.peek());
+        assertSameTokens(lexer.lex(code), tokens);
+    }
+
+    /**
+     * Returns at most a few chars per read, so that tokens and line terminators are split between reads.
+     */
+    private static final class ChunkedReader extends Reader {
+        private final String text;
+        private final Random random;
+        private int position;
+
+        ChunkedReader(String text, Random random) {
+            this.text = text;
+            this.random = random;
+        }
+
+        @Override
+        public int read(char[] buffer, int offset, int length) {
+            if (position == text.length()) {
+                return -1;
+            }
+            final var count = Math.min(Math.min(length, 1 + random.nextInt(7)), text.length() - position);
+            text.getChars(position, position + count, buffer, offset);
+            position += count;
+            return count;
+        }
+
+        @Override
+        public void close() {
+        }
+    }
+}
@@ -0,0 +1,69 @@
+package syspro.tm.lexer;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.lang.foreign.Arena;
+import java.lang.foreign.ValueLayout;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static syspro.tm.lexer.TokenAssertions.assertSameTokens;
+
+class Utf8SourceTextTest {
+    private final ReferenceLexer lexer = new ReferenceLexer();
+
+    @Test
+    void decodesSameCharsAsString() {
+        final var random = new Random(9);
+        for (var i = 0; i < 200; i++) {
+            final var code = RandomSources.generate(random, random.nextInt(400), false);
+            try (final var arena = Arena.ofConfined()) {
+                final var text = of(arena, code);
+                assertEquals(code.length(), text.length());
+                assertEquals(code, text.toString());
+                for (var index = 0; index < code.length(); index++) {
+                    assertEquals(code.charAt(index), text.charAt(index));
+                }
+                for (var index = 0; index <= code.length(); index++) {
+                    if (index < code.length() && Character.isLowSurrogate(code.charAt(index))) {
+                        continue;
+                    }
+                    final var byteOffset = code.substring(0, index).getBytes(StandardCharsets.UTF_8).length;
+                    assertEquals(byteOffset, text.byteOffset(index));
+                    assertEquals(index, text.charOffset(byteOffset));
+                }
+            }
+        }
+    }
+
+    @Test
+    void lexesSameTokensAsString() {
+        final var random = new Random(10);
+        for (var i = 0; i < 500; i++) {
+            final var code = RandomSources.generate(random, random.nextInt(2000), i % 2 == 0);
+            try (final var arena = Arena.ofConfined()) {
+                final var text = of(arena, code);
+                assertEquals(code.chars().allMatch(c -> c < 0x80), text.isAscii());
+                assertSameTokens(lexer.lex(code), lexer.lex(text));
+                assertSameTokens(lexer.lex(code), ReferenceLexer.vectorized().lex(text));
+            }
+        }
+    }
+
+    @Test
+    void lexesFile(@TempDir Path directory) throws IOException {
+        final var code = "class A\n  val s = \"ж😀\"\n";
+        final var file = directory.resolve("A.syspro");
+        Files.writeString(file, code);
+        assertSameTokens(lexer.lex(code), lexer.lexFile(file));
+    }
+
+    private static Utf8SourceText of(Arena arena, String code) {
+        return Utf8SourceText.of(arena.allocateFrom(ValueLayout.JAVA_BYTE, code.getBytes(StandardCharsets.UTF_8)));
+    }
+}
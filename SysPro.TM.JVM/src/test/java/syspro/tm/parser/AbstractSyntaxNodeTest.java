@@ -0,0 +1,100 @@
+package syspro.tm.parser;
+
+import org.junit.jupiter.api.Test;
+import syspro.tm.lexer.IdentifierToken;
+import syspro.tm.lexer.Token;
+
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class AbstractSyntaxNodeTest {
+    @Test
+    void matchesBaselineDefinitions() {
+        final var random = new Random(13);
+        for (var i = 0; i < 300; i++) {
+            final var node = copy(RandomTrees.generate(random, 6, false));
+            for (final var descendant : node.descendants(true)) {
+                assertMatchesBaseline(descendant);
+            }
+        }
+    }
+
+    @Test
+    void hasNoPositionWithoutTerminals() {
+        final var empty = new ImmutableNode(SyntaxKind.LIST, null);
+        final var node = new ImmutableNode(SyntaxKind.LIST, null, null, empty, null);
+        for (final var withoutTerminals : new ImmutableNode[]{empty, node}) {
+            assertNull(withoutTerminals.firstTerminal());
+            assertNull(withoutTerminals.lastTerminal());
+            assertNull(withoutTerminals.span());
+            assertNull(withoutTerminals.fullSpan());
+            assertEquals(PackedTextSpan.NONE, withoutTerminals.packedSpan());
+            assertEquals(PackedTextSpan.NONE, withoutTerminals.packedFullSpan());
+            assertThrows(IllegalStateException.class, withoutTerminals::position);
+            assertThrows(IllegalStateException.class, withoutTerminals::fullLength);
+        }
+    }
+
+    @Test
+    void copiesSlots() {
+        final var first = terminal(new IdentifierToken(0, 1, 0, 1, "a", null));
+        final var last = terminal(new IdentifierToken(2, 3, 0, 1, "b", null));
+        final var slots = new SyntaxNode[]{first, last};
+        final var node = new ImmutableNode(SyntaxKind.LIST, null, slots);
+        slots[1] = null;
+        assertSame(last, node.slot(1));
+        assertSame(last, node.lastTerminal());
+        assertEquals(4, node.fullLength());
+    }
+
+    private static void assertMatchesBaseline(SyntaxNode node) {
+        final var first = RandomTrees.baselineFirstTerminal(node);
+        final var last = RandomTrees.baselineLastTerminal(node);
+        assertSame(first, node.firstTerminal());
+        assertSame(last, node.lastTerminal());
+        if (first == null) {
+            assertNull(node.span());
+            return;
+        }
+
+        final var firstToken = first.token();
+        final var lastToken = last.token();
+        final var fullLength = lastToken.end - firstToken.start + 1;
+        final var length = fullLength - firstToken.leadingTriviaLength - lastToken.trailingTriviaLength;
+        assertEquals(firstToken.start, node.position());
+        assertEquals(fullLength, node.fullLength());
+        assertEquals(length, node.length());
+        assertEquals(firstToken.leadingTriviaLength, node.leadingTriviaLength());
+        assertEquals(lastToken.trailingTriviaLength, node.trailingTriviaLength());
+        assertEquals(new TextSpan(firstToken.start + firstToken.leadingTriviaLength, length), node.span());
+        assertEquals(new TextSpan(firstToken.start, fullLength), node.fullSpan());
+        assertEquals(PackedTextSpan.of(firstToken.start + firstToken.leadingTriviaLength, length), node.packedSpan());
+        assertEquals(PackedTextSpan.of(firstToken.start, fullLength), node.packedFullSpan());
+    }
+
+    /**
+     * Rebuild the tree bottom-up, the way parsers construct it.
+     */
+    private static ImmutableNode copy(SyntaxNode node) {
+        final var slots = new SyntaxNode[node.slotCount()];
+        for (var i = 0; i < slots.length; i++) {
+            final var slot = node.slot(i);
+            slots[i] = slot != null ? copy(slot) : null;
+        }
+        return new ImmutableNode(node.kind(), node.token(), slots);
+    }
+
+    private static ImmutableNode terminal(Token token) {
+        return new ImmutableNode(token.toSyntaxKind(), token);
+    }
+
+    private static final class ImmutableNode extends AbstractSyntaxNode {
+        ImmutableNode(AnySyntaxKind kind, Token token, SyntaxNode... slots) {
+            super(kind, token, slots);
+        }
+    }
+}
@@ -0,0 +1,138 @@
+package syspro.tm.parser;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class PackedTextSpanTest {
+    private static final int[][] EDGE_SPANS = {
+            {0, 0},
+            {0, 1},
+            {1, 0},
+            {0, Integer.MAX_VALUE},
+            {Integer.MAX_VALUE, 0},
+            {Integer.MAX_VALUE - 1, 1},
+            {1 << 16, 1 << 16},
+    };
+
+    @Test
+    void roundTrips() {
+        final var random = new Random(16);
+        final var spans = new ArrayList<>(Arrays.asList(EDGE_SPANS));
+        for (var i = 0; i < 10_000; i++) {
+            final var start = random.nextInt(Integer.MAX_VALUE);
+            spans.add(new int[]{start, random.nextInt(Integer.MAX_VALUE - start + 1)});
+        }
+
+        for (final var span : spans) {
+            final var start = span[0];
+            final var length = span[1];
+            final var packed = PackedTextSpan.of(start, length);
+            final var textSpan = new TextSpan(start, length);
+            assertNotEquals(PackedTextSpan.NONE, packed);
+            assertEquals(start, PackedTextSpan.start(packed));
+            assertEquals(length, PackedTextSpan.length(packed));
+            assertEquals(start + length, PackedTextSpan.end(packed));
+            assertEquals(packed, PackedTextSpan.fromBounds(start, start + length));
+            assertEquals(packed, PackedTextSpan.of(textSpan));
+            assertEquals(packed, textSpan.packed());
+            assertEquals(textSpan, PackedTextSpan.toTextSpan(packed));
+            assertEquals(textSpan.toString(), PackedTextSpan.toString(packed));
+        }
+    }
+
+    @Test
+    void rejectsNegativeParts() {
+        final int[][] invalid = {
+                {-1, 0},
+                {-1, -1},
+                {0, -1},
+                {5, -1},
+                {Integer.MIN_VALUE, 0},
+                {0, Integer.MIN_VALUE},
+                {1, Integer.MAX_VALUE},
+                {Integer.MAX_VALUE, 1},
+        };
+        for (final var span : invalid) {
+            assertThrows(IndexOutOfBoundsException.class, () -> PackedTextSpan.of(span[0], span[1]));
+        }
+        assertThrows(IndexOutOfBoundsException.class, () -> PackedTextSpan.fromBounds(5, 4));
+    }
+
+    @Test
+    void noneStandsForNull() {
+        assertEquals(PackedTextSpan.NONE, PackedTextSpan.of(null));
+        assertNull(PackedTextSpan.toTextSpan(PackedTextSpan.NONE));
+        assertEquals("null", PackedTextSpan.toString(PackedTextSpan.NONE));
+
+        final var span = PackedTextSpan.of(0, 10);
+        assertFalse(PackedTextSpan.contains(PackedTextSpan.NONE, 0));
+        assertFalse(PackedTextSpan.contains(PackedTextSpan.NONE, -1));
+        assertFalse(PackedTextSpan.contains(PackedTextSpan.NONE, span));
+        assertFalse(PackedTextSpan.contains(span, PackedTextSpan.NONE));
+        assertFalse(PackedTextSpan.overlaps(PackedTextSpan.NONE, span));
+        assertFalse(PackedTextSpan.overlaps(span, PackedTextSpan.NONE));
+        assertTrue(PackedTextSpan.compare(PackedTextSpan.NONE, PackedTextSpan.of(0, 0)) < 0);
+    }
+
+    @Test
+    void comparesLikeTextSpan() {
+        final var random = new Random(61);
+        final var spans = new ArrayList<TextSpan>();
+        for (var i = 0; i < 1000; i++) {
+            // Few distinct starts, so that equal starts are ordered by length.
+            spans.add(new TextSpan(random.nextInt(20), random.nextInt(20)));
+        }
+        spans.add(new TextSpan(Integer.MAX_VALUE, 0));
+        spans.add(new TextSpan(0, Integer.MAX_VALUE));
+        Collections.shuffle(spans, random);
+
+        final var packed = new long[spans.size()];
+        for (var i = 0; i < packed.length; i++) {
+            packed[i] = spans.get(i).packed();
+        }
+        Arrays.sort(packed);
+        Collections.sort(spans);
+        for (var i = 0; i < packed.length; i++) {
+            assertEquals(spans.get(i), PackedTextSpan.toTextSpan(packed[i]));
+        }
+        for (var i = 0; i < 1000; i++) {
+            final var first = spans.get(random.nextInt(spans.size()));
+            final var second = spans.get(random.nextInt(spans.size()));
+            assertEquals(Integer.signum(first.compareTo(second)),
+                    Integer.signum(PackedTextSpan.compare(first.packed(), second.packed())));
+        }
+    }
+
+    @Test
+    void containsAndOverlapsAtBoundaries() {
+        final var span = PackedTextSpan.of(10, 5);
+        assertFalse(PackedTextSpan.contains(span, 9));
+        assertTrue(PackedTextSpan.contains(span, 10));
+        assertTrue(PackedTextSpan.contains(span, 14));
+        assertFalse(PackedTextSpan.contains(span, 15));
+        assertTrue(PackedTextSpan.contains(span, span));
+        assertTrue(PackedTextSpan.contains(span, PackedTextSpan.of(15, 0)));
+        assertFalse(PackedTextSpan.contains(span, PackedTextSpan.of(14, 2)));
+
+        assertTrue(PackedTextSpan.overlaps(span, PackedTextSpan.of(14, 1)));
+        assertFalse(PackedTextSpan.overlaps(span, PackedTextSpan.of(15, 1)));
+        assertFalse(PackedTextSpan.overlaps(span, PackedTextSpan.of(5, 5)));
+        assertFalse(PackedTextSpan.overlaps(span, PackedTextSpan.of(12, 0)));
+
+        final var empty = PackedTextSpan.of(7, 0);
+        assertTrue(PackedTextSpan.isEmpty(empty));
+        assertFalse(PackedTextSpan.contains(empty, 7));
+        assertFalse(PackedTextSpan.overlaps(empty, empty));
+    }
+}
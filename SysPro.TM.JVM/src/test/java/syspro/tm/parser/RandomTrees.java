@@ -0,0 +1,113 @@
+package syspro.tm.parser;
+
+import syspro.tm.lexer.IdentifierToken;
+import syspro.tm.lexer.Token;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Random syntax trees with null slots, empty lists and (optionally) shared nodes, built from nodes that keep
+ * every default {@link SyntaxNode} method. Baseline definitions of the optimized defaults are here to compare against.
+ */
+public final class RandomTrees {
+    private RandomTrees() {
+    }
+
+    public static SyntaxNode generate(Random random, int maxDepth, boolean shareNodes) {
+        return generate(random, maxDepth, shareNodes, 4);
+    }
+
+    public static SyntaxNode generate(Random random, int maxDepth, boolean shareNodes, int maxSlotCount) {
+        return new Generator(random, shareNodes, maxSlotCount).node(maxDepth);
+    }
+
+    /**
+     * {@link SyntaxNode#firstTerminal()} as originally defined, via {@link SyntaxNode#descendants(boolean)}.
+     */
+    public static SyntaxNode baselineFirstTerminal(SyntaxNode node) {
+        if (node.isTerminal()) {
+            return node;
+        }
+        for (final var descendant : node.descendants(false)) {
+            if (descendant.isTerminal()) {
+                return descendant;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * {@link SyntaxNode#lastTerminal()} as originally defined, via {@link SyntaxNode#descendants(boolean)}.
+     */
+    public static SyntaxNode baselineLastTerminal(SyntaxNode node) {
+        if (node.isTerminal()) {
+            return node;
+        }
+        for (final var descendant : node.descendants(false).reversed()) {
+            if (descendant.isTerminal()) {
+                return descendant;
+            }
+        }
+        return null;
+    }
+
+    public record Node(AnySyntaxKind kind, Token token, SyntaxNode... slots) implements SyntaxNode {
+        @Override
+        public int slotCount() {
+            return slots.length;
+        }
+
+        @Override
+        public SyntaxNode slot(int index) {
+            return slots[index];
+        }
+
+        @Override
+        public String toString() {
+            return token != null ? token.toString() : kind + "[" + slots.length + "]";
+        }
+    }
+
+    private static final class Generator {
+        private final Random random;
+        private final boolean shareNodes;
+        private final int maxSlotCount;
+        private final List<SyntaxNode> created = new ArrayList<>();
+        private int position;
+
+        Generator(Random random, boolean shareNodes, int maxSlotCount) {
+            this.random = random;
+            this.shareNodes = shareNodes;
+            this.maxSlotCount = maxSlotCount;
+        }
+
+        SyntaxNode node(int depth) {
+            final SyntaxNode node;
+            if (depth == 0 || random.nextInt(10) < 3) {
+                final var leadingTriviaLength = random.nextInt(3);
+                final var trailingTriviaLength = random.nextInt(3);
+                final var end = position + leadingTriviaLength + 1 + random.nextInt(3) + trailingTriviaLength - 1;
+                final var token = new IdentifierToken(position, end, leadingTriviaLength, trailingTriviaLength, "x", null);
+                position = end + 1;
+                node = new Node(token.toSyntaxKind(), token);
+            } else {
+                final var slots = new SyntaxNode[random.nextInt(maxSlotCount + 1)];
+                for (var i = 0; i < slots.length; i++) {
+                    final var choice = random.nextInt(10);
+                    if (choice < 2) {
+                        continue;
+                    }
+                    // Only finished nodes are shared, so there are no loops.
+                    slots[i] = shareNodes && choice < 3 && !created.isEmpty()
+                            ? created.get(random.nextInt(created.size()))
+                            : node(depth - 1);
+                }
+                node = new Node(SyntaxKind.LIST, null, slots);
+            }
+            created.add(node);
+            return node;
+        }
+    }
+}
@@ -0,0 +1,109 @@
+package syspro.tm.parser;
+
+import org.junit.jupiter.api.Test;
+import syspro.tm.lexer.IdentifierToken;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+
+class SyntaxTreeWalkerTest {
+    private final SyntaxTreeWalker walker = new SyntaxTreeWalker();
+
+    @Test
+    void defaultTerminalsMatchBaselineWithSharedNodes() {
+        final var random = new Random(14);
+        for (var i = 0; i < 500; i++) {
+            final var root = RandomTrees.generate(random, 6, i % 2 == 0);
+            for (final var node : root.descendants(true)) {
+                assertSame(RandomTrees.baselineFirstTerminal(node), node.firstTerminal());
+                assertSame(RandomTrees.baselineLastTerminal(node), node.lastTerminal());
+            }
+        }
+    }
+
+    @Test
+    void lastTerminalCountsSharedNodeAtFirstOccurrence() {
+        final var shared = terminal(0);
+        final var other = terminal(1);
+        // Pre-order with duplicates removed: list, shared, inner, other.
+        final var root = new RandomTrees.Node(SyntaxKind.LIST, null, shared, new RandomTrees.Node(SyntaxKind.LIST, null, other, shared));
+        assertSame(other, RandomTrees.baselineLastTerminal(root));
+        assertSame(other, root.lastTerminal());
+    }
+
+    @Test
+    void visitsInPreOrderLikeDescendants() {
+        final var random = new Random(15);
+        for (var i = 0; i < 200; i++) {
+            final var root = RandomTrees.generate(random, 6, true);
+            final var entered = new ArrayList<SyntaxNode>();
+            assertNull(walker.walk(root, node -> {
+                entered.add(node);
+                return SyntaxTreeWalker.Action.CONTINUE;
+            }));
+            assertEquals(root.descendants(true), entered);
+        }
+    }
+
+    @Test
+    void leavesInReversedPreOrderWithoutSharedNodes() {
+        final var random = new Random(16);
+        for (var i = 0; i < 200; i++) {
+            final var root = RandomTrees.generate(random, 6, false);
+            final var left = new ArrayList<SyntaxNode>();
+            walker.walkReversed(root, new SyntaxTreeWalker.Visitor() {
+                @Override
+                public SyntaxTreeWalker.Action enter(SyntaxNode node) {
+                    return SyntaxTreeWalker.Action.CONTINUE;
+                }
+
+                @Override
+                public SyntaxTreeWalker.Action leave(SyntaxNode node) {
+                    left.add(node);
+                    return SyntaxTreeWalker.Action.CONTINUE;
+                }
+            });
+            assertEquals(root.descendants(true).reversed(), left);
+        }
+    }
+
+    @Test
+    void skipsChildrenAndStops() {
+        final var first = terminal(0);
+        final var skipped = new RandomTrees.Node(SyntaxKind.LIST, null, first);
+        final var second = terminal(1);
+        final var root = new RandomTrees.Node(SyntaxKind.SOURCE_TEXT, null, skipped, null, new RandomTrees.Node(SyntaxKind.LIST, null), second);
+        final var entered = new ArrayList<SyntaxNode>();
+        final var stopped = walker.walk(root, node -> {
+            entered.add(node);
+            if (node == skipped) {
+                return SyntaxTreeWalker.Action.SKIP_CHILDREN;
+            }
+            return node.isTerminal() ? SyntaxTreeWalker.Action.STOP : SyntaxTreeWalker.Action.CONTINUE;
+        });
+        assertSame(second, stopped);
+        assertEquals(List.of(root, skipped, root.slot(2), second), entered);
+    }
+
+    @Test
+    void terminatesOnLoops() {
+        final var slots = new SyntaxNode[2];
+        final var root = new RandomTrees.Node(SyntaxKind.LIST, null, slots);
+        final var terminal = terminal(0);
+        slots[0] = root;
+        slots[1] = terminal;
+        assertSame(terminal, root.firstTerminal());
+        assertSame(terminal, root.lastTerminal());
+        assertSame(RandomTrees.baselineLastTerminal(root), root.lastTerminal());
+    }
+
+    private static RandomTrees.Node terminal(int position) {
+        final var token = new IdentifierToken(position, position, 0, 0, "x", null);
+        return new RandomTrees.Node(token.toSyntaxKind(), token);
+    }
+}
@@ -0,0 +1,68 @@
+package syspro.tm.parser;
+
+import org.junit.jupiter.api.Test;
+import syspro.tm.lexer.IdentifierToken;
+
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+
+class SyntaxUtilsTest {
+    @Test
+    void nodeAtPositionMatchesLinearScan() {
+        final var random = new Random(15);
+        for (var i = 0; i < 200; i++) {
+            // Wide lists take the binary search path, including its fallback for elements without terminals.
+            final var root = i % 2 == 0 ? RandomTrees.generate(random, 5, false) : RandomTrees.generate(random, 3, false, 12);
+            final var nodes = root.descendants(true);
+            final var spans = nodes.stream().map(SyntaxNode::fullSpan).toList();
+            final var end = spans.getFirst() == null ? 0 : spans.getFirst().end();
+            // Every position, so trivia and both boundaries of every span are covered, and just outside the root.
+            for (var position = -1; position <= end; position++) {
+                assertSame(linearScan(nodes, spans, position), SyntaxUtils.nodeAtPosition(root, position), "Position " + position);
+            }
+        }
+    }
+
+    @Test
+    void nodeAtPositionSkipsNullSlotsAndEmptyLists() {
+        final var first = terminal(0, 2, 1, 0);
+        final var last = terminal(3, 5, 0, 2);
+        final var slots = new SyntaxNode[10];
+        slots[0] = first;
+        slots[4] = new RandomTrees.Node(SyntaxKind.LIST, null);
+        slots[5] = new RandomTrees.Node(SyntaxKind.LIST, null, (SyntaxNode) null);
+        slots[9] = last;
+        final var root = new RandomTrees.Node(SyntaxKind.LIST, null, slots);
+        assertSame(first, SyntaxUtils.nodeAtPosition(root, 0));
+        assertSame(first, SyntaxUtils.nodeAtPosition(root, 2));
+        assertSame(last, SyntaxUtils.nodeAtPosition(root, 3));
+        assertSame(last, SyntaxUtils.nodeAtPosition(root, 5));
+        assertNull(SyntaxUtils.nodeAtPosition(root, 6));
+        assertNull(SyntaxUtils.nodeAtPosition(slots[4], 0));
+        assertNull(SyntaxUtils.nodeAtPosition(null, 0));
+    }
+
+    /**
+     * The original definition, over {@code descendants(true)} and their full spans: the node with the shortest full span containing the position, the first in pre-order among equals.
+     */
+    private static SyntaxNode linearScan(List<SyntaxNode> nodes, List<TextSpan> spans, int position) {
+        SyntaxNode result = null;
+        var resultLength = Integer.MAX_VALUE;
+        for (var i = 0; i < nodes.size(); i++) {
+            final var span = spans.get(i);
+            if (span != null && span.contains(position) && span.length < resultLength) {
+                result = nodes.get(i);
+                resultLength = span.length;
+            }
+        }
+        return result;
+    }
+
+    private static RandomTrees.Node terminal(int start, int end, int leadingTriviaLength, int trailingTriviaLength) {
+        final var token = new IdentifierToken(start, end, leadingTriviaLength, trailingTriviaLength, "x", null);
+        return new RandomTrees.Node(token.toSyntaxKind(), token);
+    }
+}
@@ -0,0 +1,148 @@
+package syspro.tm.parser;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+import java.util.function.Predicate;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class TextSpanIndexTest {
+    private static final int TEXT_LENGTH = 64;
+
+    @Test
+    void matchesLinearScan() {
+        final var random = new Random(17);
+        for (var round = 0; round < 200; round++) {
+            final var items = randomItems(random, random.nextInt(40));
+            final var index = TextSpanIndex.of(items, Item::span);
+            final var indexed = indexedInSpanOrder(items);
+            assertEquals(indexed.size(), index.size());
+
+            for (var position = -1; position <= TEXT_LENGTH + 1; position++) {
+                final var at = position;
+                assertEquals(filter(indexed, span -> span.contains(at)), index.containing(position), "Position " + position);
+            }
+
+            for (var start = 0; start <= TEXT_LENGTH + 1; start++) {
+                for (var end = start; end <= TEXT_LENGTH + 1; end++) {
+                    final var query = TextSpan.fromBounds(start, end);
+                    assertEquals(filter(indexed, span -> overlaps(span, query)), index.overlapping(query), "Overlap " + query);
+                    assertEquals(filter(indexed, span -> span.contains(query)), index.enclosing(query), "Enclosing " + query);
+                }
+            }
+        }
+    }
+
+    @Test
+    void emptySpans() {
+        final var empty = new Item(0, new TextSpan(5, 0));
+        final var before = new Item(1, new TextSpan(2, 3));
+        final var around = new Item(2, new TextSpan(4, 2));
+        final var after = new Item(3, new TextSpan(5, 1));
+        final var otherEmpty = new Item(4, new TextSpan(5, 0));
+        final var index = TextSpanIndex.of(List.of(empty, before, around, after, otherEmpty), Item::span);
+
+        // Empty spans contain no position and overlap nothing, not even themselves.
+        assertEquals(List.of(around, after), index.containing(5));
+        assertEquals(List.of(around, after), index.overlapping(new TextSpan(5, 1)));
+        assertEquals(List.of(), index.overlapping(new TextSpan(5, 0)));
+        assertEquals(List.of(), index.overlapping(new TextSpan(0, 0)));
+
+        // An empty span is enclosed by spans ending at it, and by equal empty spans, in collection order.
+        assertEquals(List.of(before, around, empty, otherEmpty, after), index.enclosing(new TextSpan(5, 0)));
+        assertEquals(List.of(around, after), index.enclosing(new TextSpan(5, 1)));
+        assertEquals(List.of(), index.enclosing(new TextSpan(7, 0)));
+    }
+
+    @Test
+    void boundaries() {
+        final var first = new Item(0, new TextSpan(0, 3));
+        final var last = new Item(1, new TextSpan(Integer.MAX_VALUE - 2, 2));
+        final var whole = new Item(2, new TextSpan(0, Integer.MAX_VALUE));
+        final var index = TextSpanIndex.of(List.of(first, last, whole), Item::span);
+
+        assertEquals(List.of(), index.containing(-1));
+        assertEquals(List.of(first, whole), index.containing(0));
+        assertEquals(List.of(first, whole), index.containing(2));
+        assertEquals(List.of(whole), index.containing(3));
+        assertEquals(List.of(whole, last), index.containing(Integer.MAX_VALUE - 1));
+        assertEquals(List.of(), index.containing(Integer.MAX_VALUE));
+
+        // End positions are exclusive.
+        assertEquals(List.of(whole), index.overlapping(new TextSpan(3, 10)));
+        assertEquals(List.of(first, whole), index.overlapping(new TextSpan(2, 10)));
+        assertEquals(List.of(whole, last), index.overlapping(TextSpan.fromBounds(Integer.MAX_VALUE - 1, Integer.MAX_VALUE)));
+        assertEquals(List.of(first, whole), index.enclosing(new TextSpan(0, 3)));
+        assertEquals(List.of(whole), index.enclosing(new TextSpan(0, 4)));
+        assertEquals(List.of(whole, last), index.enclosing(new TextSpan(Integer.MAX_VALUE, 0)));
+    }
+
+    @Test
+    void skipsItemsWithoutSpan() {
+        final var indexedItem = new Item(1, new TextSpan(1, 1));
+        final var index = TextSpanIndex.of(List.of(new Item(0, null), indexedItem, new Item(2, null)), Item::span);
+        assertEquals(1, index.size());
+        assertEquals(List.of(indexedItem), index.containing(1));
+
+        final var empty = TextSpanIndex.of(List.of());
+        assertTrue(empty.isEmpty());
+        assertEquals(List.of(), empty.containing(0));
+        assertEquals(List.of(), empty.overlapping(new TextSpan(0, 10)));
+        assertEquals(List.of(), empty.enclosing(new TextSpan(0, 0)));
+    }
+
+    @Test
+    void handlesManyNestedSpans() {
+        // Every span contains the next one: the latest ending span is always the first of a range.
+        final var spans = new ArrayList<TextSpan>();
+        for (var i = 0; i < 100_000; i++) {
+            spans.add(TextSpan.fromBounds(i, 200_000 - i));
+        }
+        final var index = TextSpanIndex.of(spans);
+        assertEquals(spans, index.containing(100_000));
+        assertEquals(spans.subList(0, 10), index.enclosing(TextSpan.fromBounds(9, 190_000)));
+        assertEquals(spans.subList(0, 11), index.overlapping(new TextSpan(0, 11)));
+    }
+
+    private static List<Item> randomItems(Random random, int count) {
+        final var items = new ArrayList<Item>();
+        for (var i = 0; i < count; i++) {
+            if (random.nextInt(10) == 0) {
+                items.add(new Item(i, null));
+                continue;
+            }
+
+            final var start = random.nextInt(TEXT_LENGTH);
+            // Plenty of empty and repeated spans.
+            final var length = random.nextBoolean() ? random.nextInt(3) : random.nextInt(TEXT_LENGTH - start + 1);
+            items.add(new Item(i, new TextSpan(start, length)));
+        }
+        return items;
+    }
+
+    /**
+     * Stable sort, so items with equal spans stay in collection order.
+     */
+    private static List<Item> indexedInSpanOrder(List<Item> items) {
+        final var indexed = items.stream().filter(item -> item.span() != null).toArray(Item[]::new);
+        Arrays.sort(indexed, Comparator.comparing(Item::span));
+        return List.of(indexed);
+    }
+
+    private static List<Item> filter(List<Item> items, Predicate<TextSpan> predicate) {
+        return items.stream().filter(item -> predicate.test(item.span())).toList();
+    }
+
+    private static boolean overlaps(TextSpan span, TextSpan other) {
+        return !span.isEmpty() && !other.isEmpty() && span.start < other.end() && other.start < span.end();
+    }
+
+    private record Item(int id, TextSpan span) {
+    }
+}
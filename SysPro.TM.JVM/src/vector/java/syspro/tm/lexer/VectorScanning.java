@@ -0,0 +1,109 @@
+package syspro.tm.lexer;
+
+import jdk.incubator.vector.ByteVector;
+import jdk.incubator.vector.VectorSpecies;
+
+import java.lang.foreign.MemorySegment;
+import java.lang.foreign.ValueLayout;
+import java.nio.ByteOrder;
+
+/**
+ * Vector API scanning of ASCII text, {@link ByteVector#SPECIES_PREFERRED} bytes (16 to 64) at a time.
+ * Only loaded when {@code jdk.incubator.vector} is available, see {@code ReferenceLexer.vectorized()}.
+ * Compiled in its own source set, so that only this class is compiled against the incubating module.
+ * All methods return {@code to} if nothing is found.
+ */
+final class VectorScanning {
+    private static final VectorSpecies<Byte> SPECIES = ByteVector.SPECIES_PREFERRED;
+
+    private VectorScanning() {
+    }
+
+    /**
+     * @return index of the first byte that is not a space, a tab, a form feed or a vertical tab
+     */
+    static long skipWhitespace(MemorySegment bytes, long from, long to) {
+        var index = from;
+        // Indentation and spaces between tokens are short, don't pay for a vector load for them.
+        while (index < to && index - from < 4) {
+            if (!isWhitespace(bytes.get(ValueLayout.JAVA_BYTE, index))) {
+                return index;
+            }
+            index++;
+        }
+
+        final var step = SPECIES.length();
+        for (; index + step <= to; index += step) {
+            final var vector = load(bytes, index);
+            final var mask = vector.eq((byte) ' ')
+                    .or(vector.eq((byte) '\t'))
+                    .or(vector.eq((byte) '\f'))
+                    .or(vector.eq((byte) 0x0B));
+            if (!mask.allTrue()) {
+                return index + mask.not().firstTrue();
+            }
+        }
+
+        while (index < to && isWhitespace(bytes.get(ValueLayout.JAVA_BYTE, index))) {
+            index++;
+        }
+        return index;
+    }
+
+    /**
+     * @return index of the first {@code \r} or {@code \n}
+     */
+    static long findLineTerminator(MemorySegment bytes, long from, long to) {
+        var index = from;
+        final var step = SPECIES.length();
+        for (; index + step <= to; index += step) {
+            final var vector = load(bytes, index);
+            final var mask = vector.eq((byte) '\n').or(vector.eq((byte) '\r'));
+            if (mask.anyTrue()) {
+                return index + mask.firstTrue();
+            }
+        }
+
+        for (; index < to; index++) {
+            final var b = bytes.get(ValueLayout.JAVA_BYTE, index);
+            if (b == '\n' || b == '\r') {
+                return index;
+            }
+        }
+        return index;
+    }
+
+    /**
+     * @return index of the first {@code "}, {@code \}, {@code \r} or {@code \n}
+     */
+    static long findStringDelimiter(MemorySegment bytes, long from, long to) {
+        var index = from;
+        final var step = SPECIES.length();
+        for (; index + step <= to; index += step) {
+            final var vector = load(bytes, index);
+            final var mask = vector.eq((byte) '"')
+                    .or(vector.eq((byte) '\\'))
+                    .or(vector.eq((byte) '\n'))
+                    .or(vector.eq((byte) '\r'));
+            if (mask.anyTrue()) {
+                return index + mask.firstTrue();
+            }
+        }
+
+        for (; index < to; index++) {
+            final var b = bytes.get(ValueLayout.JAVA_BYTE, index);
+            if (b == '"' || b == '\\' || b == '\n' || b == '\r') {
+                return index;
+            }
+        }
+        return index;
+    }
+
+    private static ByteVector load(MemorySegment bytes, long index) {
+        return ByteVector.fromMemorySegment(SPECIES, bytes, index, ByteOrder.nativeOrder());
+    }
+
+    private static boolean isWhitespace(byte b) {
+        return b == ' ' || b == '\t' || b == '\f' || b == 0x0B;
+    }
+}